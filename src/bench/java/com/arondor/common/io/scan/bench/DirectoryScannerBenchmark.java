@@ -0,0 +1,137 @@
+package com.arondor.common.io.scan.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.arondor.common.io.scan.DirectoryScanner;
+import com.arondor.common.io.scan.TraversalEngine;
+
+/**
+ * Full scans of generated trees.
+ *
+ * Run with the benchmark profile :
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-rf json -rff target/jmh-result.json"
+ * </pre>
+ *
+ * Trees are generated in the folder given by the scan.bench.folder system
+ * property (default : java.io.tmpdir), which should be on tmpfs (such as
+ * /dev/shm) to measure the scanner rather than the disk. Parameters may be
+ * narrowed with JMH options, for instance -p shape=BALANCED -p
+ * entries=2000000. Keep the JSON results of each release to compare them.
+ *
+ * Trees hold files at their deepest level only, so that the globstar and
+ * levels patterns scan the same files, which is checked before measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryScannerBenchmark
+{
+    @Param({ "WIDE", "DEEP", "BALANCED", "SKEWED" })
+    private TreeGenerator.Shape shape;
+
+    @Param({ "100000" })
+    private int entries;
+
+    @Param({ "false", "true" })
+    private boolean async;
+
+    @Param({ "1", "4", "16" })
+    private int corePoolSize;
+
+    @Param({ "false", "true" })
+    private boolean sortFolderChildren;
+
+    @Param({ "FILE", "NIO", "STREAM" })
+    private TraversalEngine traversalEngine;
+
+    /**
+     * globstar : root/**&#47;*.txt, levels : one '*' per level down to the
+     * deepest files, such as root/*&#47;*&#47;*.txt
+     */
+    @Param({ "globstar", "levels" })
+    private String pattern;
+
+    private String filter;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        File baseFolder = new File(System.getProperty("scan.bench.folder", System.getProperty("java.io.tmpdir")),
+                "arondor-scan-bench");
+        File root = TreeGenerator.getTree(baseFolder, shape, entries, true);
+        String rootPath = root.getAbsolutePath().replace('\\', '/');
+        String globstar = rootPath + "/**/*.txt";
+        StringBuilder builder = new StringBuilder(rootPath);
+        for (int level = 0; level < TreeGenerator.getDepth(shape); level++)
+        {
+            builder.append("/*");
+        }
+        String levels = builder.append("/*.txt").toString();
+        int globstarCount = count(globstar);
+        int levelsCount = count(levels);
+        if (globstarCount != levelsCount || globstarCount == 0)
+        {
+            throw new IllegalStateException("Patterns of " + root.getAbsolutePath() + " match different files : "
+                    + globstarCount + " for " + globstar + ", " + levelsCount + " for " + levels);
+        }
+        filter = "globstar".equals(pattern) ? globstar : levels;
+    }
+
+    private static int count(String filter)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add(filter);
+        scanner.setFilters(filters);
+        int count = 0;
+        for (@SuppressWarnings("unused")
+        String file : scanner)
+        {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int scan(Blackhole blackhole)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(async);
+        scanner.setCorePoolSize(corePoolSize);
+        scanner.setSortFolderChildren(sortFolderChildren);
+        scanner.setTraversalEngine(traversalEngine);
+        List<String> filters = new ArrayList<String>();
+        filters.add(filter);
+        scanner.setFilters(filters);
+        int count = 0;
+        for (String file : scanner)
+        {
+            blackhole.consume(file);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,222 @@
+package com.arondor.common.io.scan.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Generates synthetic trees for benchmarks.
+ *
+ * Trees are generated once, in a folder named after their shape and size, and
+ * reused as long as their marker file is present : generating millions of
+ * entries takes much longer than scanning them. Generation is seeded, so that
+ * a same shape and size always give the same tree.
+ *
+ * Trees may hold files at their deepest level only, so that a pattern with
+ * one '*' per level matches the same files as a globstar pattern.
+ */
+public final class TreeGenerator
+{
+    private static final Logger LOGGER = Logger.getLogger(TreeGenerator.class);
+
+    private static final String MARKER = ".generated";
+
+    public enum Shape
+    {
+        /**
+         * A few folders holding many files each
+         */
+        WIDE,
+
+        /**
+         * Long chains of folders holding a few files each
+         */
+        DEEP,
+
+        /**
+         * A balanced tree, with a fanout of 8 folders and 16 files per folder
+         */
+        BALANCED,
+
+        /**
+         * A balanced tree, where one branch of each folder holds most of the
+         * entries
+         */
+        SKEWED
+    }
+
+    private final Random random = new Random(42);
+
+    private final Shape shape;
+
+    private final int entries;
+
+    private final boolean leafFilesOnly;
+
+    private int remaining;
+
+    private TreeGenerator(Shape shape, int entries, boolean leafFilesOnly)
+    {
+        this.shape = shape;
+        this.entries = entries;
+        this.leafFilesOnly = leafFilesOnly;
+    }
+
+    /**
+     * Get a tree, generating it if needed
+     *
+     * @param baseFolder
+     *            the folder holding generated trees, preferably on tmpfs
+     * @param shape
+     *            the shape of the tree
+     * @param entries
+     *            the approximate number of files and folders
+     * @return the root of the tree
+     */
+    public static File getTree(File baseFolder, Shape shape, int entries) throws IOException
+    {
+        return getTree(baseFolder, shape, entries, false);
+    }
+
+    /**
+     * Get a tree, generating it if needed
+     *
+     * @param baseFolder
+     *            the folder holding generated trees, preferably on tmpfs
+     * @param shape
+     *            the shape of the tree
+     * @param entries
+     *            the approximate number of files and folders
+     * @param leafFilesOnly
+     *            only put files in the folders at {@link #getDepth(Shape)}
+     * @return the root of the tree
+     */
+    public static File getTree(File baseFolder, Shape shape, int entries, boolean leafFilesOnly) throws IOException
+    {
+        File root = new File(baseFolder, shape.name().toLowerCase() + "-" + entries
+                + (leafFilesOnly ? "-leaves" : ""));
+        File marker = new File(root, MARKER);
+        if (marker.exists())
+        {
+            return root;
+        }
+        LOGGER.info("Generating " + shape + " tree of " + entries + " entries in " + root.getAbsolutePath());
+        long start = System.currentTimeMillis();
+        TreeGenerator generator = new TreeGenerator(shape, entries, leafFilesOnly);
+        generator.generate(root);
+        new FileOutputStream(marker).close();
+        LOGGER.info("Generated " + root.getAbsolutePath() + " in " + (System.currentTimeMillis() - start) + "ms");
+        return root;
+    }
+
+    /**
+     * @return the depth of the deepest files of a tree
+     */
+    public static int getDepth(Shape shape)
+    {
+        switch (shape)
+        {
+        case WIDE:
+            return 1;
+        case DEEP:
+            return 32;
+        default:
+            return 4;
+        }
+    }
+
+    private void generate(File root) throws IOException
+    {
+        remaining = entries;
+        mkdir(root);
+        switch (shape)
+        {
+        case WIDE:
+            while (remaining > 0)
+            {
+                File folder = mkdir(new File(root, "w" + remaining));
+                files(folder, 10000, 1);
+            }
+            break;
+        case DEEP:
+            for (int chain = 0; remaining > 0; chain++)
+            {
+                File folder = new File(root, "chain" + chain);
+                for (int level = 0; level < getDepth(shape) && remaining > 0; level++)
+                {
+                    folder = mkdir(folder);
+                    files(folder, 2, level + 1);
+                    folder = new File(folder, "d" + level);
+                }
+            }
+            break;
+        default:
+            /*
+             * Subtrees of the balanced levels are added until entries are
+             * exhausted
+             */
+            for (int tree = 0; remaining > 0; tree++)
+            {
+                balanced(mkdir(new File(root, "t" + tree)), 1);
+            }
+            break;
+        }
+    }
+
+    private void balanced(File folder, int level) throws IOException
+    {
+        files(folder, 16, level);
+        if (level >= getDepth(shape))
+        {
+            return;
+        }
+        int fanout = 8;
+        for (int idx = 0; idx < fanout && remaining > 0; idx++)
+        {
+            File child = mkdir(new File(folder, "d" + idx));
+            if (shape == Shape.SKEWED && idx > 0 && random.nextInt(8) != 0)
+            {
+                /*
+                 * Most siblings of the heavy first branch are left as leaves
+                 */
+                files(child, 1 + random.nextInt(4), level + 1);
+                continue;
+            }
+            balanced(child, level + 1);
+        }
+    }
+
+    private File mkdir(File folder) throws IOException
+    {
+        if (!folder.isDirectory() && !folder.mkdirs())
+        {
+            throw new IOException("Could not create " + folder.getAbsolutePath());
+        }
+        remaining--;
+        return folder;
+    }
+
+    /**
+     * @param depth
+     *            the depth of the folder below the root
+     */
+    private void files(File folder, int count, int depth) throws IOException
+    {
+        if (leafFilesOnly && depth < getDepth(shape))
+        {
+            return;
+        }
+        for (int idx = 0; idx < count && remaining > 0; idx++)
+        {
+            String extension = idx % 4 == 3 ? ".pcl" : ".txt";
+            Files.write(new File(folder, "f" + idx + extension).toPath(),
+                    Integer.toString(idx).getBytes(Charset.forName("UTF-8")));
+            remaining--;
+        }
+    }
+}
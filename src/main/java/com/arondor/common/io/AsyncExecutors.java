@@ -0,0 +1,177 @@
+package com.arondor.common.io;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Executors running the producers of {@link AsyncIterator}s.
+ * 
+ * The shared executor pools threads across iterators, without bounding them
+ * by default : a producer holds its thread until its iterator is consumed or
+ * interrupted, so that with a bounded pool, the producers of further
+ * iterators would wait for open iterators to be consumed, and their consumers
+ * with them, a deadlock when consumers alternate between iterators or when a
+ * producer consumes another iterator.
+ * 
+ * A bound can still be set with {@link #MAX_SHARED_THREADS_PROPERTY}, past
+ * which producers are queued until a thread is free, for applications that
+ * consume their iterators to the end or interrupt them. Producers are not run
+ * by the calling thread : the caller is usually the consumer, which would
+ * then block on the full queue of its own producer.
+ * 
+ * On runtimes providing virtual threads (Java 21+), they are reached by
+ * reflection, so that this library still runs on older runtimes.
+ */
+public final class AsyncExecutors
+{
+    private static final Logger LOGGER = Logger.getLogger(AsyncExecutors.class);
+
+    /**
+     * System property selecting virtual threads for the default executor of
+     * {@link AsyncIterator}, where supported
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "com.arondor.common.io.virtualThreads";
+
+    /**
+     * System property setting the maximum number of threads of the shared
+     * executor, unbounded if not set or not positive
+     */
+    public static final String MAX_SHARED_THREADS_PROPERTY = "com.arondor.common.io.maxSharedThreads";
+
+    private static volatile ExecutorService sharedExecutor;
+
+    private AsyncExecutors()
+    {
+    }
+
+    /**
+     * @return the executor shared by iterators : unbounded, unless
+     *         {@link #MAX_SHARED_THREADS_PROPERTY} is set ; idle threads are
+     *         kept for a minute, and are daemon threads
+     */
+    public static Executor getSharedExecutor()
+    {
+        ExecutorService executor = sharedExecutor;
+        if (executor == null)
+        {
+            synchronized (AsyncExecutors.class)
+            {
+                if (sharedExecutor == null)
+                {
+                    int maxThreads = Integer.getInteger(MAX_SHARED_THREADS_PROPERTY, 0);
+                    if (maxThreads > 0)
+                    {
+                        LOGGER.info("Shared executor limited to " + maxThreads + " threads");
+                        sharedExecutor = newBoundedExecutor(maxThreads);
+                    }
+                    else
+                    {
+                        sharedExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                new SynchronousQueue<Runnable>(), new IteratorThreadFactory());
+                    }
+                }
+                executor = sharedExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * @return an executor of at most maxThreads daemon threads, queuing tasks
+     *         past that bound
+     */
+    static ThreadPoolExecutor newBoundedExecutor(int maxThreads)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new IteratorThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Daemon threads, named after the iterators they run
+     */
+    private static final class IteratorThreadFactory implements ThreadFactory
+    {
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "AsyncIterator-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * @return true if the runtime provides virtual threads
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return getVirtualThreadFactoryMethod() != null;
+    }
+
+    private static Method getVirtualThreadFactoryMethod()
+    {
+        try
+        {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null if the
+     *         runtime does not provide virtual threads
+     */
+    public static Executor newVirtualThreadExecutor()
+    {
+        Method method = getVirtualThreadFactoryMethod();
+        if (method == null)
+        {
+            return null;
+        }
+        try
+        {
+            return (Executor) method.invoke(null);
+        }
+        catch (Exception e)
+        {
+            LOGGER.warn("Could not create virtual thread executor : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the default executor of iterators : virtual threads if the
+     *         {@link #VIRTUAL_THREADS_PROPERTY} system property is true and
+     *         the runtime supports them, the shared executor otherwise
+     */
+    static Executor createDefaultExecutor()
+    {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY))
+        {
+            Executor executor = newVirtualThreadExecutor();
+            if (executor != null)
+            {
+                LOGGER.info("Running iterators on virtual threads");
+                return executor;
+            }
+            LOGGER.warn("Virtual threads are not supported by this runtime, using the shared executor");
+        }
+        return getSharedExecutor();
+    }
+}
@@ -1,10 +1,19 @@
 package com.arondor.common.io;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
-import java.util.concurrent.Semaphore;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.log4j.Logger;
 
@@ -14,6 +23,14 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
 {
     private static final Logger LOGGER = Logger.getLogger(AsyncIterator.class);
 
+    private static volatile Executor defaultExecutor;
+
+    /**
+     * Configuration : executor running the async threads, null for the
+     * default one
+     */
+    private Executor executor;
+
     /**
      * Configuration : asynchronous or not
      */
@@ -35,54 +52,164 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
     private int queueLimitDelay = 100;
 
     /**
-     * List of file paths to handle
+     * Queue of objects to handle, created on first use
      */
-    private List<T> objectList = new ArrayList<T>();
+    private volatile ObjectQueue<T> queue;
 
     /**
      * Total number of objects added to the iterator
      */
-    private int totalObjectsAdded = 0;
+    private final AtomicInteger totalObjectsAdded = new AtomicInteger();
 
     /**
      * Total number of objects iterated over
      */
-    private int totalObjectsIterated = 0;
+    private final AtomicInteger totalObjectsIterated = new AtomicInteger();
 
     /**
      * Is asynchronous scanning called or not ?
      */
-    private boolean asyncScanCalled = false;
+    private volatile boolean asyncScanCalled = false;
 
     /**
      * Is the async iterator in pause ?
      */
-    private boolean paused = false;
+    private volatile boolean paused = false;
 
     /**
      * Is parsing finished or not
      */
-    private boolean hasParsed = false;
+    private volatile boolean hasParsed = false;
+
+    /**
+     * Number of async threads still parsing
+     */
+    private final AtomicInteger parsingThreads = new AtomicInteger();
 
     /**
      * Is scanning interrupted
      */
-    private boolean interrupted = false;
+    private volatile boolean interrupted = false;
 
     /**
-     * Parse semaphore
+     * Consumers waiting for an object, producers waiting for room in the
+     * queue
      */
-    private Semaphore parseSemaphore = new Semaphore(0);
+    private final WaitingThreads consumers = new WaitingThreads();
+
+    private final WaitingThreads producers = new WaitingThreads();
+
+    /**
+     * Objects queued and not claimed by a consumer yet, in async mode : a
+     * consumer claims objects before taking them, so that the objects it
+     * claimed are left to it
+     */
+    private final AtomicInteger unclaimed = new AtomicInteger();
+
+    /**
+     * Objects claimed by {@link #hasNext()}, left for {@link #next()}
+     */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /**
+     * Set on the threads whose last call to {@link #hasNext()} reserved an
+     * object, so that calling it again reserves no other one
+     */
+    private final ThreadLocal<Boolean> reserving = new ThreadLocal<Boolean>();
 
     /**
      * Randomize input values
      */
     private boolean randomize = false;
 
+    /**
+     * Seed of the randomized order, null for a random seed
+     */
+    private Long randomSeed;
+
+    /**
+     * @return the queue, created for the configuration of the first scan
+     */
+    private ObjectQueue<T> getQueue()
+    {
+        ObjectQueue<T> current = queue;
+        if (current == null)
+        {
+            synchronized (this)
+            {
+                if (queue == null)
+                {
+                    int limit = isAsync() ? getQueueLimit() : 0;
+                    if (isRandomize())
+                    {
+                        queue = new RandomObjectQueue<T>(limit, randomSeed != null ? new Random(randomSeed)
+                                : new Random());
+                    }
+                    else if (limit > 0)
+                    {
+                        queue = new RingBufferQueue<T>(limit);
+                    }
+                    else
+                    {
+                        queue = new LinkedObjectQueue<T>();
+                    }
+                }
+                current = queue;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * In async mode, a call returning true reserves an object for a call to
+     * {@link #next()}, on any thread : consumers sharing the iterator may thus
+     * each call {@link #hasNext()} then {@link #next()}. Calling it again on
+     * the same thread before {@link #next()} reserves no other object.
+     */
     @Override
     public boolean hasNext()
     {
         if (isAsync())
+        {
+            if (reserving.get() != null && reserved.get() > 0)
+            {
+                return true;
+            }
+            startAsyncScan();
+            if (awaitClaim(1, Long.MAX_VALUE) == 0)
+            {
+                reserving.remove();
+                return false;
+            }
+            reserved.incrementAndGet();
+            reserving.set(Boolean.TRUE);
+            return true;
+        }
+        else
+        {
+            if (getQueue().size() > 0)
+            {
+                return true;
+            }
+            if (hasParsed)
+            {
+                return false;
+            }
+            if (doScanOneItem())
+            {
+                return true;
+            }
+            else
+            {
+                hasParsed = true;
+            }
+            return getQueue().size() > 0;
+        }
+    }
+
+    private void startAsyncScan()
+    {
+        if (!asyncScanCalled)
         {
             synchronized (this)
             {
@@ -91,86 +218,232 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
                     callAsyncScan();
                 }
             }
-            try
+        }
+    }
+
+    /**
+     * Claim up to max queued objects, not claimed by other consumers
+     * 
+     * @return the number of objects claimed
+     */
+    private int claim(int max)
+    {
+        while (true)
+        {
+            int current = unclaimed.get();
+            int count = Math.min(max, current);
+            if (count <= 0)
             {
-                parseSemaphore.acquire();
+                return 0;
             }
-            catch (InterruptedException e)
+            if (unclaimed.compareAndSet(current, current - count))
             {
-                throw new RuntimeException("Interrupted !", e);
+                return count;
             }
-            synchronized (this)
+        }
+    }
+
+    /**
+     * Wait until objects can be claimed
+     * 
+     * @param timeout
+     *            the time to wait in nanoseconds, Long.MAX_VALUE to wait until
+     *            parsing is finished
+     * @return the number of objects claimed, 0 on timeout or once parsing is
+     *         finished and every queued object claimed
+     */
+    private int awaitClaim(int max, long timeout)
+    {
+        int count = claim(max);
+        if (count > 0 || timeout <= 0)
+        {
+            return count;
+        }
+        long deadline = System.nanoTime() + timeout;
+        Thread current = Thread.currentThread();
+        while (true)
+        {
+            consumers.register(current);
+            boolean finished = hasParsed;
+            count = claim(max);
+            long remaining = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (count == 0 && !finished && remaining > 0)
             {
-                // LOGGER.debug("acquired, hasParsed=" + hasParsed + ",
-                // isEmpty=" + objectList.isEmpty());
-                if (!objectList.isEmpty())
-                {
-                    /*
-                     * We have elements in queue, so we can consume at least one
-                     */
-                    return true;
-                }
-                else if (hasParsed)
+                if (remaining == Long.MAX_VALUE)
                 {
-                    /*
-                     * In case we are a bunch waiting sitting on parse Semaphore
-                     */
-                    parseSemaphore.release();
-                    return false;
+                    LockSupport.park(this);
                 }
                 else
                 {
-                    throw new RuntimeException("Files list is empty, but hasParsed is false !");
+                    LockSupport.parkNanos(this, remaining);
                 }
             }
-        }
-        else
-        {
-            if (!objectList.isEmpty())
+            consumers.deregister(current);
+            if (Thread.interrupted())
             {
-                return true;
+                throw new RuntimeException("Interrupted !");
             }
-            if (hasParsed)
+            if (count > 0)
             {
-                return false;
+                return count;
             }
-            if (doScanOneItem())
+            if (finished)
             {
-                return true;
+                return claim(max);
             }
-            else
+            if (remaining <= 0)
             {
-                hasParsed = true;
+                return 0;
             }
-            return !objectList.isEmpty();
         }
     }
 
-    private final Random randomGenerator = new Random();
+    /**
+     * Take claimed objects from the queue : a slot counted as queued may be
+     * published a moment later by its producer
+     */
+    private void takeClaimed(Collection<? super T> target, int count)
+    {
+        ObjectQueue<T> objects = getQueue();
+        int taken = objects.drainTo(target, count);
+        while (taken < count)
+        {
+            Thread.yield();
+            taken += objects.drainTo(target, count - taken);
+        }
+        /*
+         * The wake-up of an unclaimed object may have been consumed by a
+         * thread that claimed another one : pass it on
+         */
+        if (!consumers.isEmpty() && unclaimed.get() > 0)
+        {
+            consumers.wakeOne();
+        }
+        producers.wake(count);
+    }
 
-    @Override
-    public synchronized T next()
+    /**
+     * Take the object reserved by {@link #hasNext()}, or claim one
+     * 
+     * @return the object, or null once parsing is finished and the queue
+     *         empty
+     */
+    private T take()
     {
-        if (objectList.isEmpty())
+        reserving.remove();
+        if (!takeReservation() && awaitClaim(1, Long.MAX_VALUE) == 0)
         {
-            throw new RuntimeException("next() : objectList is empty !");
+            return null;
         }
-        int index = 0;
-        if (isRandomize())
+        List<T> taken = new ArrayList<T>(1);
+        takeClaimed(taken, 1);
+        return taken.get(0);
+    }
+
+    private boolean takeReservation()
+    {
+        while (true)
         {
-            int size = objectList.size();
-            if (size > 10)
+            int current = reserved.get();
+            if (current == 0)
+            {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current - 1))
             {
-                index = randomGenerator.nextInt(size);
+                return true;
             }
         }
-        T obj = objectList.get(index);
+    }
+
+    /**
+     * Wait for the next objects
+     * 
+     * @param timeout
+     *            the time to wait in nanoseconds, Long.MAX_VALUE to wait until
+     *            parsing is finished
+     * @return the number of objects taken, 0 on timeout or once parsing is
+     *         finished and the queue empty
+     */
+    private int take(Collection<? super T> target, int max, long timeout)
+    {
+        int count = awaitClaim(max, timeout);
+        if (count > 0)
+        {
+            takeClaimed(target, count);
+        }
+        return count;
+    }
+
+    /**
+     * Take up to max objects at once, waiting for at least one
+     * 
+     * @return the objects, empty once all objects were iterated
+     */
+    public List<T> nextBatch(int max)
+    {
+        List<T> batch = new ArrayList<T>(Math.max(0, Math.min(max, 1024)));
+        drainTo(batch, max, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return batch;
+    }
+
+    /**
+     * Move up to max objects at once to a collection
+     * 
+     * @param target
+     *            the collection
+     * @param max
+     *            the maximum number of objects
+     * @param timeout
+     *            the time to wait for a first object, Long.MAX_VALUE to wait
+     *            until parsing is finished
+     * @param unit
+     *            the unit of the timeout
+     * @return the number of objects moved, 0 on timeout or once all objects
+     *         were iterated
+     */
+    public int drainTo(Collection<? super T> target, int max, long timeout, TimeUnit unit)
+    {
+        if (max <= 0)
+        {
+            return 0;
+        }
+        int count = 0;
+        if (isAsync())
+        {
+            startAsyncScan();
+            count = take(target, max, timeout == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(timeout));
+        }
+        else if (hasNext())
+        {
+            count = getQueue().drainTo(target, max);
+        }
+        totalObjectsIterated.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Take the next object, waiting for it in async mode : the object
+     * reserved by a call to {@link #hasNext()}, or an unreserved one.
+     */
+    @Override
+    public T next()
+    {
+        T obj;
+        if (isAsync())
+        {
+            startAsyncScan();
+            obj = take();
+        }
+        else
+        {
+            obj = getQueue().poll();
+        }
         if (obj == null)
         {
-            throw new RuntimeException("objectList.get(" + index + ") returned null !");
+            throw new NoSuchElementException("next() : queue is empty !");
         }
-        objectList.remove(index);
-        totalObjectsIterated++;
+        totalObjectsIterated.incrementAndGet();
         return obj;
     }
 
@@ -190,43 +463,137 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
         return async;
     }
 
-    protected synchronized void doAddObject(T obj)
+    /**
+     * Queue an object, waiting for room in the queue if full
+     */
+    protected void doAddObject(T obj)
+    {
+        ObjectQueue<T> objects = getQueue();
+        if (!objects.offer(obj))
+        {
+            Thread current = Thread.currentThread();
+            while (true)
+            {
+                if (interrupted)
+                {
+                    throw new RuntimeException("Interrupted parsing !" + this);
+                }
+                producers.register(current);
+                boolean offered = objects.offer(obj);
+                if (!offered)
+                {
+                    LockSupport.park(this);
+                }
+                producers.deregister(current);
+                if (Thread.interrupted())
+                {
+                    LOGGER.error("Interrupted while waiting for queue limit...");
+                    throw new RuntimeException("Interrupted while waiting for queue limit !" + this);
+                }
+                if (offered)
+                {
+                    if (!producers.isEmpty())
+                    {
+                        producers.wakeOne();
+                    }
+                    break;
+                }
+            }
+        }
+        totalObjectsAdded.incrementAndGet();
+        published(1);
+        if (!consumers.isEmpty())
+        {
+            consumers.wakeOne();
+        }
+    }
+
+    private void published(int count)
     {
-        objectList.add(obj);
-        totalObjectsAdded++;
         if (isAsync())
         {
-            parseSemaphore.release();
+            unclaimed.addAndGet(count);
         }
     }
 
     protected void addObject(T obj)
     {
-        while (isPaused() || (isAsync() && getQueueLimit() > 0 && objectList.size() >= getQueueLimit()))
+        waitWhilePaused();
+        doAddObject(obj);
+    }
+
+    /**
+     * Queue objects at once, waiting for room in the queue if full
+     */
+    protected void addObjects(List<? extends T> objs)
+    {
+        waitWhilePaused();
+        ObjectQueue<T> objects = getQueue();
+        int from = 0;
+        Thread current = Thread.currentThread();
+        while (from < objs.size())
         {
+            int count = objects.offerAll(objs, from);
+            if (count > 0)
+            {
+                from += count;
+                totalObjectsAdded.addAndGet(count);
+                published(count);
+                consumers.wake(count);
+                continue;
+            }
             if (interrupted)
             {
                 throw new RuntimeException("Interrupted parsing !" + this);
             }
-            try
+            producers.register(current);
+            count = objects.offerAll(objs, from);
+            if (count == 0)
             {
-                Thread.sleep(getQueueLimitDelay());
+                LockSupport.park(this);
             }
-            catch (InterruptedException e)
+            producers.deregister(current);
+            if (Thread.interrupted())
             {
                 LOGGER.error("Interrupted while waiting for queue limit...");
+                throw new RuntimeException("Interrupted while waiting for queue limit !" + this);
+            }
+            if (count > 0)
+            {
+                from += count;
+                totalObjectsAdded.addAndGet(count);
+                published(count);
+                consumers.wake(count);
+                if (!producers.isEmpty())
+                {
+                    producers.wakeOne();
+                }
+            }
+        }
+    }
+
+    private void waitWhilePaused()
+    {
+        while (isPaused())
+        {
+            if (interrupted)
+            {
+                throw new RuntimeException("Interrupted parsing !" + this);
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(getQueueLimitDelay()));
+            if (Thread.interrupted())
+            {
+                LOGGER.error("Interrupted while paused...");
                 break;
             }
         }
-        doAddObject(obj);
     }
 
-    private synchronized void setFinished()
+    private void setFinished()
     {
         LOGGER.debug("**** setFinished() *****");
         hasParsed = true;
-        if (isAsync())
-            parseSemaphore.release();
+        consumers.wakeAll();
     }
 
     /**
@@ -247,11 +614,14 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
             throw new RuntimeException("Invalid call to callAsyncScan() : already called !");
         }
         asyncScanCalled = true;
+        getQueue();
         LOGGER.info("Starting " + getAsyncThreads() + " threads for " + AsyncIterator.this.getClass().getName());
+        parsingThreads.set(getAsyncThreads());
+        Executor asyncExecutor = getExecutor();
         for (int t = 0; t < getAsyncThreads(); t++)
         {
             final int threadNumber = t;
-            Thread parsingThread = new Thread()
+            Runnable parsing = new Runnable()
             {
                 @Override
                 public void run()
@@ -274,11 +644,27 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
                     finally
                     {
                         LOGGER.info("Finished async thread for " + AsyncIterator.this.getClass().getName());
-                        setFinished();
+                        parsingFinished();
                     }
                 }
             };
-            parsingThread.start();
+            try
+            {
+                asyncExecutor.execute(parsing);
+            }
+            catch (RejectedExecutionException e)
+            {
+                LOGGER.error("Could not start async thread #" + threadNumber + " : " + e.getMessage());
+                parsingFinished();
+            }
+        }
+    }
+
+    private void parsingFinished()
+    {
+        if (parsingThreads.decrementAndGet() == 0)
+        {
+            setFinished();
         }
     }
 
@@ -288,13 +674,86 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
         return this;
     }
 
+    /**
+     * @return a spliterator handing off chunks of the queue to other threads
+     *         when split
+     */
+    @Override
+    public Spliterator<T> spliterator()
+    {
+        return new AsyncSpliterator<T>(this, isOrderedIteration());
+    }
+
+    public Stream<T> stream()
+    {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a parallel stream : objects are handed off to the threads of the
+     *         stream as they are added
+     */
+    public Stream<T> parallelStream()
+    {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * @return true if objects are iterated in a meaningful order, which
+     *         parallel streams then have to keep
+     */
+    protected boolean isOrderedIteration()
+    {
+        return !isRandomize() && (!isAsync() || getAsyncThreads() == 1);
+    }
+
+    /**
+     * @return true once all objects were added
+     */
+    boolean isParsed()
+    {
+        return hasParsed;
+    }
+
     public int getQueueSize()
     {
-        return this.objectList.size();
+        ObjectQueue<T> current = queue;
+        return current != null ? current.size() : 0;
+    }
+
+    /**
+     * @return the number of objects the queue holds, once created : the queue
+     *         limit, rounded up to a power of two unless randomized, or 0 for
+     *         no limit
+     */
+    public int getQueueCapacity()
+    {
+        ObjectQueue<T> current = queue;
+        return current != null ? current.getCapacity() : 0;
+    }
+
+    /**
+     * The queue is created on first use for the configuration at that time
+     */
+    private void checkQueueNotCreated(String setting)
+    {
+        if (queue != null)
+        {
+            throw new IllegalStateException("Could not change " + setting
+                    + " : the queue is already created, set it before iterating !");
+        }
     }
 
+    /**
+     * @param queueLimit
+     *            the number of objects queued in async mode, rounded up to a
+     *            power of two unless randomized ; set before iterating
+     * @throws IllegalStateException
+     *             once iteration started
+     */
     public void setQueueLimit(int queueLimit)
     {
+        checkQueueNotCreated("queue limit");
         this.queueLimit = queueLimit;
     }
 
@@ -316,12 +775,18 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
     public void interruptParsing()
     {
         interrupted = true;
+        producers.wakeAll();
         // if ( isAsync() && parsingThread != null )
         // {
         // parsingThread.interrupt();
         // }
     }
 
+    public boolean isInterrupted()
+    {
+        return interrupted;
+    }
+
     public void setAsyncThreads(int asyncThreads)
     {
         LOGGER.info("setAsyncThreads(" + asyncThreads + ") for " + AsyncIterator.this.getClass().getName());
@@ -333,24 +798,110 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
         return asyncThreads;
     }
 
+    /**
+     * @return the executor running the async threads
+     */
+    public Executor getExecutor()
+    {
+        if (executor != null)
+        {
+            return executor;
+        }
+        return getDefaultExecutor();
+    }
+
+    /**
+     * @param executor
+     *            the executor running the async threads, null for
+     *            {@link #getDefaultExecutor()} ; each async thread is a task
+     *            running until parsing is finished
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the executor of iterators without one, see
+     *         {@link AsyncExecutors}
+     */
+    public static Executor getDefaultExecutor()
+    {
+        Executor current = defaultExecutor;
+        if (current == null)
+        {
+            synchronized (AsyncIterator.class)
+            {
+                if (defaultExecutor == null)
+                {
+                    defaultExecutor = AsyncExecutors.createDefaultExecutor();
+                }
+                current = defaultExecutor;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param executor
+     *            the executor of iterators without one, null to go back to
+     *            the default of {@link AsyncExecutors}
+     */
+    public static void setDefaultExecutor(Executor executor)
+    {
+        synchronized (AsyncIterator.class)
+        {
+            defaultExecutor = executor;
+        }
+    }
+
     public boolean isRandomize()
     {
         return randomize;
     }
 
+    /**
+     * Iterate objects in random order : each object is taken at random among
+     * those queued, so that the queue limit also bounds how far objects are
+     * shuffled
+     * 
+     * @param randomize
+     *            true to randomize ; set before iterating
+     * @throws IllegalStateException
+     *             once iteration started
+     */
     public void setRandomize(boolean randomize)
     {
+        checkQueueNotCreated("randomize");
         this.randomize = randomize;
     }
 
+    public Long getRandomSeed()
+    {
+        return randomSeed;
+    }
+
+    /**
+     * @param randomSeed
+     *            the seed of the randomized order, null for a random seed :
+     *            the order is reproducible when objects are queued in the
+     *            same order and taken at the same points, as in synchronous
+     *            mode
+     */
+    public void setRandomSeed(Long randomSeed)
+    {
+        checkQueueNotCreated("random seed");
+        this.randomSeed = randomSeed;
+    }
+
     public int getTotalObjectsAdded()
     {
-        return totalObjectsAdded;
+        return totalObjectsAdded.get();
     }
 
     public int getTotalObjectsIterated()
     {
-        return totalObjectsIterated;
+        return totalObjectsIterated.get();
     }
 
     public boolean isPaused()
@@ -361,6 +912,10 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
     public void setPaused(boolean paused)
     {
         this.paused = paused;
+        if (!paused)
+        {
+            producers.wakeAll();
+        }
     }
 
     /**
@@ -389,6 +944,9 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
             return AsyncIterator.this.isRandomize();
         }
 
+        /**
+         * Fails once iteration started : the queue is not rebuilt
+         */
         public void setRandomize(boolean randomize)
         {
             AsyncIterator.this.setRandomize(randomize);
@@ -414,16 +972,32 @@ public abstract class AsyncIterator<T> implements Iterator<T>, Iterable<T>
             AsyncIterator.this.setPaused(paused);
         }
 
+        /**
+         * Fails once iteration started : the queue is not rebuilt
+         */
         public void setQueueLimit(int queueLimit)
         {
             AsyncIterator.this.setQueueLimit(queueLimit);
         }
 
+        /**
+         * @return the limit requested, see {@link #getQueueCapacity()} for
+         *         the one applied
+         */
         public int getQueueLimit()
         {
             return AsyncIterator.this.getQueueLimit();
         }
 
+        /**
+         * @return the queue limit applied, rounded up to a power of two unless
+         *         randomized, 0 for no limit or before iterating
+         */
+        public int getQueueCapacity()
+        {
+            return AsyncIterator.this.getQueueCapacity();
+        }
+
         public void setQueueLimitDelay(int queueLimitDelay)
         {
             AsyncIterator.this.setQueueLimitDelay(queueLimitDelay);
@@ -0,0 +1,89 @@
+package com.arondor.common.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator of an {@link AsyncIterator}.
+ * 
+ * Splitting drains a chunk of the objects queued, sized from
+ * {@link AsyncIterator#getQueueSize()}, so that a parallel stream processes
+ * objects as they are added instead of waiting for large batches. The size is
+ * unknown until parsing is finished, so that streams keep splitting.
+ */
+final class AsyncSpliterator<T> implements Spliterator<T>
+{
+    private static final int MIN_CHUNK = 16;
+
+    private static final int MAX_CHUNK = 4096;
+
+    private final AsyncIterator<T> iterator;
+
+    private final int characteristics;
+
+    AsyncSpliterator(AsyncIterator<T> iterator, boolean ordered)
+    {
+        this.iterator = iterator;
+        this.characteristics = Spliterator.NONNULL | Spliterator.CONCURRENT | (ordered ? Spliterator.ORDERED : 0);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action)
+    {
+        /*
+         * Other consumers may share the iterator : take the object at once
+         */
+        List<T> one = new ArrayList<T>(1);
+        if (iterator.drainTo(one, 1, Long.MAX_VALUE, TimeUnit.NANOSECONDS) == 0)
+        {
+            return false;
+        }
+        action.accept(one.get(0));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action)
+    {
+        List<T> chunk = new ArrayList<T>();
+        while (iterator.drainTo(chunk, MAX_CHUNK, Long.MAX_VALUE, TimeUnit.NANOSECONDS) > 0)
+        {
+            for (T obj : chunk)
+            {
+                action.accept(obj);
+            }
+            chunk.clear();
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit()
+    {
+        int max = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, iterator.getQueueSize()));
+        List<T> chunk = iterator.nextBatch(max);
+        if (chunk.isEmpty())
+        {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Spliterator<T> split = (Spliterator<T>) Spliterators.spliterator(chunk.toArray(), characteristics
+                & ~Spliterator.CONCURRENT);
+        return split;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return iterator.isParsed() ? iterator.getQueueSize() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return characteristics;
+    }
+}
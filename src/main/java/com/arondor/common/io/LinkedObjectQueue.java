@@ -0,0 +1,71 @@
+package com.arondor.common.io;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded lock-free queue, counting its objects so that its size is not
+ * computed by walking it
+ */
+final class LinkedObjectQueue<T> implements ObjectQueue<T>
+{
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Override
+    public boolean offer(T obj)
+    {
+        queue.offer(obj);
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public T poll()
+    {
+        T obj = queue.poll();
+        if (obj != null)
+        {
+            size.decrementAndGet();
+        }
+        return obj;
+    }
+
+    @Override
+    public int offerAll(List<? extends T> objects, int from)
+    {
+        int count = objects.size() - from;
+        queue.addAll(from == 0 ? objects : objects.subList(from, objects.size()));
+        size.addAndGet(count);
+        return count;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int max)
+    {
+        int count = 0;
+        T obj;
+        while (count < max && (obj = queue.poll()) != null)
+        {
+            target.add(obj);
+            count++;
+        }
+        size.addAndGet(-count);
+        return count;
+    }
+
+    @Override
+    public int size()
+    {
+        return Math.max(0, size.get());
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,49 @@
+package com.arondor.common.io;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Queue of the objects produced by an {@link AsyncIterator}, shared by its
+ * producers and consumers : implementations are thread-safe and never block.
+ */
+interface ObjectQueue<T>
+{
+    /**
+     * @return false if the queue is full
+     */
+    boolean offer(T obj);
+
+    /**
+     * @return the next object, or null if the queue is empty
+     */
+    T poll();
+
+    /**
+     * Queue objects while there is room, in a single step where possible
+     * 
+     * @param objects
+     *            the objects
+     * @param from
+     *            the index of the first object to queue
+     * @return the number of objects queued, 0 if the queue is full
+     */
+    int offerAll(List<? extends T> objects, int from);
+
+    /**
+     * Take the next objects, in a single step where possible
+     * 
+     * @return the number of objects taken, 0 if the queue is empty
+     */
+    int drainTo(Collection<? super T> target, int max);
+
+    /**
+     * @return the number of objects queued, which may be stale
+     */
+    int size();
+
+    /**
+     * @return the maximum number of objects queued, 0 for no limit
+     */
+    int getCapacity();
+}
@@ -0,0 +1,161 @@
+package com.arondor.common.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read-only {@link RandomAccessInterface} over an entry of a zip archive,
+ * streamed from the archive without extracting it.
+ * 
+ * Reading and seeking forward are sequential ; seeking backward reopens the
+ * entry, which for compressed entries inflates it again up to the offset.
+ */
+public class RandomAccessZipEntry implements RandomAccessInterface
+{
+    private final ZipFile zipFile;
+
+    private final ZipEntry entry;
+
+    private final boolean closeZipFile;
+
+    private InputStream input;
+
+    private long offset = 0;
+
+    /**
+     * @param zipFile
+     *            the archive
+     * @param entry
+     *            the entry of the archive
+     * @param closeZipFile
+     *            true to close the archive when this entry is closed
+     */
+    public RandomAccessZipEntry(ZipFile zipFile, ZipEntry entry, boolean closeZipFile) throws IOException
+    {
+        this.zipFile = zipFile;
+        this.entry = entry;
+        this.closeZipFile = closeZipFile;
+        this.input = zipFile.getInputStream(entry);
+    }
+
+    public ZipEntry getEntry()
+    {
+        return entry;
+    }
+
+    public long length() throws IOException
+    {
+        return entry.getSize();
+    }
+
+    public long getFilePointer() throws IOException
+    {
+        return offset;
+    }
+
+    public void seek(long offset) throws IOException
+    {
+        if (offset < 0 || offset > length())
+        {
+            throw new IOException("seek(" + offset + ") out of range, length=" + length());
+        }
+        if (offset < this.offset)
+        {
+            input.close();
+            input = zipFile.getInputStream(entry);
+            this.offset = 0;
+        }
+        while (this.offset < offset)
+        {
+            long skipped = input.skip(offset - this.offset);
+            if (skipped <= 0)
+            {
+                throw new EOFException("Could not seek to " + offset + " in " + entry.getName());
+            }
+            this.offset += skipped;
+        }
+    }
+
+    public int read() throws IOException
+    {
+        int i = input.read();
+        if (i >= 0)
+        {
+            offset++;
+        }
+        return i;
+    }
+
+    public int read(byte[] bytes, int offset, int count) throws IOException
+    {
+        int read = input.read(bytes, offset, count);
+        if (read > 0)
+        {
+            this.offset += read;
+        }
+        return read;
+    }
+
+    private int readByte() throws IOException
+    {
+        int i = read();
+        if (i < 0)
+        {
+            throw new EOFException("End of entry " + entry.getName() + " at offset=" + offset);
+        }
+        return i;
+    }
+
+    public int readInt() throws IOException
+    {
+        return (readByte() << 24) + (readByte() << 16) + (readByte() << 8) + readByte();
+    }
+
+    public int readUnsignedShort() throws IOException
+    {
+        return (readByte() << 8) + readByte();
+    }
+
+    public void close() throws IOException
+    {
+        try
+        {
+            input.close();
+        }
+        finally
+        {
+            if (closeZipFile)
+            {
+                zipFile.close();
+            }
+        }
+    }
+
+    public void writeByte(int i) throws IOException
+    {
+        throw new IOException("Zip entries are read-only !");
+    }
+
+    public void writeShort(int value) throws IOException
+    {
+        throw new IOException("Zip entries are read-only !");
+    }
+
+    public void writeInt(int i) throws IOException
+    {
+        throw new IOException("Zip entries are read-only !");
+    }
+
+    public void write(byte[] bytes) throws IOException
+    {
+        throw new IOException("Zip entries are read-only !");
+    }
+
+    public void write(byte[] b, int offset, int length) throws IOException
+    {
+        throw new IOException("Zip entries are read-only !");
+    }
+}
@@ -0,0 +1,111 @@
+package com.arondor.common.io;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Queue taking objects at random, for randomized iteration.
+ * 
+ * Objects are appended to an array ; an object is taken from a random slot,
+ * which is filled with the last object (swap-remove), so that both are O(1)
+ * whatever the number of objects queued.
+ */
+final class RandomObjectQueue<T> implements ObjectQueue<T>
+{
+    private Object[] objects = new Object[16];
+
+    private int size = 0;
+
+    private final Random random;
+
+    private final int limit;
+
+    /**
+     * @param limit
+     *            the number of objects queued, 0 for no limit
+     * @param random
+     *            the random generator
+     */
+    RandomObjectQueue(int limit, Random random)
+    {
+        this.limit = limit;
+        this.random = random;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > objects.length)
+        {
+            objects = Arrays.copyOf(objects, Math.max(capacity, objects.length * 2));
+        }
+    }
+
+    @Override
+    public synchronized boolean offer(T obj)
+    {
+        if (limit > 0 && size >= limit)
+        {
+            return false;
+        }
+        ensureCapacity(size + 1);
+        objects[size++] = obj;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized T poll()
+    {
+        if (size == 0)
+        {
+            return null;
+        }
+        int index = random.nextInt(size);
+        T obj = (T) objects[index];
+        objects[index] = objects[--size];
+        objects[size] = null;
+        return obj;
+    }
+
+    @Override
+    public synchronized int offerAll(List<? extends T> objs, int from)
+    {
+        int count = objs.size() - from;
+        if (limit > 0)
+        {
+            count = Math.max(0, Math.min(count, limit - size));
+        }
+        ensureCapacity(size + count);
+        for (int idx = 0; idx < count; idx++)
+        {
+            objects[size++] = objs.get(from + idx);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int drainTo(Collection<? super T> target, int max)
+    {
+        int count = 0;
+        while (count < max && size > 0)
+        {
+            target.add(poll());
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return limit;
+    }
+}
@@ -0,0 +1,199 @@
+package com.arondor.common.io;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for multiple producers and consumers, over a ring
+ * of slots.
+ * 
+ * Each slot carries a sequence telling whether it is free for the producer at
+ * a given tail position, or filled for the consumer at a given head
+ * position : a producer or consumer claims its position with a single CAS on
+ * the tail or head, then publishes the slot by advancing its sequence
+ * (Vyukov's bounded MPMC queue). Batches claim a run of consecutive slots
+ * with a single CAS.
+ */
+final class RingBufferQueue<T> implements ObjectQueue<T>
+{
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<T> slots;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param limit
+     *            the number of objects queued, rounded up to a power of two,
+     *            at least 2
+     */
+    RingBufferQueue(int limit)
+    {
+        int size = 2;
+        while (size < limit)
+        {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<T>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int idx = 0; idx < size; idx++)
+        {
+            sequences.set(idx, idx);
+        }
+    }
+
+    @Override
+    public boolean offer(T obj)
+    {
+        long position = tail.get();
+        while (true)
+        {
+            int slot = (int) (position & mask);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    slots.set(slot, obj);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0)
+            {
+                /*
+                 * The slot still holds the object of the previous round
+                 */
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public T poll()
+    {
+        long position = head.get();
+        while (true)
+        {
+            int slot = (int) (position & mask);
+            long difference = sequences.get(slot) - (position + 1);
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    T obj = slots.get(slot);
+                    slots.set(slot, null);
+                    sequences.set(slot, position + capacity);
+                    return obj;
+                }
+                position = head.get();
+            }
+            else if (difference < 0)
+            {
+                /*
+                 * The slot is not filled yet
+                 */
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+
+    @Override
+    public int offerAll(List<? extends T> objects, int from)
+    {
+        int max = objects.size() - from;
+        while (true)
+        {
+            long position = tail.get();
+            int count = 0;
+            while (count < max && sequences.get((int) ((position + count) & mask)) == position + count)
+            {
+                count++;
+            }
+            if (count == 0)
+            {
+                if (sequences.get((int) (position & mask)) < position)
+                {
+                    return 0;
+                }
+                continue;
+            }
+            if (tail.compareAndSet(position, position + count))
+            {
+                for (int idx = 0; idx < count; idx++)
+                {
+                    int slot = (int) ((position + idx) & mask);
+                    slots.set(slot, objects.get(from + idx));
+                    sequences.set(slot, position + idx + 1);
+                }
+                return count;
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> target, int max)
+    {
+        while (true)
+        {
+            long position = head.get();
+            int count = 0;
+            while (count < max && sequences.get((int) ((position + count) & mask)) == position + count + 1)
+            {
+                count++;
+            }
+            if (count == 0)
+            {
+                if (sequences.get((int) (position & mask)) < position + 1)
+                {
+                    return 0;
+                }
+                continue;
+            }
+            if (head.compareAndSet(position, position + count))
+            {
+                for (int idx = 0; idx < count; idx++)
+                {
+                    int slot = (int) ((position + idx) & mask);
+                    target.add(slots.get(slot));
+                    slots.set(slot, null);
+                    sequences.set(slot, position + idx + capacity);
+                }
+                return count;
+            }
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    @Override
+    public int getCapacity()
+    {
+        return capacity;
+    }
+}
@@ -0,0 +1,62 @@
+package com.arondor.common.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Threads parked until woken by another thread.
+ * 
+ * A thread registers itself before checking its condition a last time, then
+ * parks : a thread making the condition true after that check sees it
+ * registered, and unparks it.
+ */
+final class WaitingThreads
+{
+    private final ConcurrentLinkedQueue<Thread> threads = new ConcurrentLinkedQueue<Thread>();
+
+    void register(Thread thread)
+    {
+        threads.add(thread);
+    }
+
+    void deregister(Thread thread)
+    {
+        threads.remove(thread);
+    }
+
+    boolean isEmpty()
+    {
+        return threads.isEmpty();
+    }
+
+    void wakeOne()
+    {
+        Thread thread = threads.poll();
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void wake(int count)
+    {
+        for (int idx = 0; idx < count; idx++)
+        {
+            Thread thread = threads.poll();
+            if (thread == null)
+            {
+                return;
+            }
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void wakeAll()
+    {
+        Thread thread;
+        while ((thread = threads.poll()) != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+}
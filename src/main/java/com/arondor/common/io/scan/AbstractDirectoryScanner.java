@@ -0,0 +1,2312 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.arondor.common.io.AsyncIterator;
+import com.arondor.common.io.ConfigurableThreadPoolExecutor;
+import com.arondor.common.management.mbean.MBeanObject;
+
+/**
+ * Directory scanner, emitting an object for each file matching the filters
+ * 
+ * @param <T>
+ *            the type of emitted objects
+ */
+public abstract class AbstractDirectoryScanner<T> extends AsyncIterator<T>
+{
+    private static final Logger LOGGER = Logger.getLogger(AbstractDirectoryScanner.class);
+
+    private static final boolean VERBOSE = LOGGER.isDebugEnabled();
+
+    /**
+     * Matching files of a folder published at once
+     */
+    private static final int FILE_BATCH_SIZE = 256;
+
+    private final ScheduledThreadPoolExecutor executor = new ConfigurableThreadPoolExecutor(
+            "DirectoryScanner_" + System.currentTimeMillis(), 1, 65536);
+
+    public AbstractDirectoryScanner()
+    {
+    }
+
+    /**
+     * Check if a path has wildcard characters or not
+     * 
+     * @param path
+     *            the path to check
+     * @return true if the path has wildcards, false otherwise
+     */
+    public static boolean isWildcard(String path)
+    {
+        return (path.contains("*") || path.contains("?"));
+    }
+
+    private List<String> filters;
+
+    private List<String> excludedExtensions = new ArrayList<String>();
+
+    private List<String> excludedPaths = new ArrayList<String>();
+
+    /**
+     * Compiled {@link #excludedExtensions}, for the current scan
+     */
+    private ExtensionSet excludedExtensionSet;
+
+    /**
+     * Compiled {@link #excludedPaths}, for the current scan, null if none
+     */
+    private GlobPattern exclusionGlob;
+
+    private boolean filterOutInconsistentNames = true;
+
+    /**
+     * Filters on the attributes of matching files, empty if none
+     */
+    private List<FileAttributeFilter> fileAttributeFilters = new ArrayList<FileAttributeFilter>();
+
+    /**
+     * Walk archives with these extensions as folders
+     */
+    private boolean scanArchives = false;
+
+    private List<String> archiveExtensions = new ArrayList<String>(Arrays.asList("zip", "jar"));
+
+    /**
+     * Folders last modified before this time are not walked, 0 to walk all
+     */
+    private long foldersModifiedSince = 0;
+
+    private boolean sortFolderChildren = false;
+
+    private TraversalEngine traversalEngine = TraversalEngine.FILE;
+
+    private DirectoryLister lister = traversalEngine.createLister();
+
+    /**
+     * Lister used by the current scan
+     */
+    private DirectoryLister scanLister;
+
+    /**
+     * Incremental mode : snapshot of the previous scan, rewritten by each scan
+     */
+    private File snapshotFile;
+
+    private boolean emitUnchangedFiles = false;
+
+    private boolean verifyUnchangedFolders = false;
+
+    private ScanChangeListener scanChangeListener;
+
+    /**
+     * Continuous mode : keep watching the walked folders once the initial walk
+     * is over
+     */
+    private boolean continuous = false;
+
+    private DirectoryWatcher directoryWatcher;
+
+    /**
+     * Schedule each folder as a task of a work-stealing {@link ForkJoinPool}
+     */
+    private boolean workStealing = false;
+
+    /**
+     * Emit files in tree order, while folders are listed in parallel
+     */
+    private boolean orderedOutput = false;
+
+    private int orderedPrefetchLimit = 1024;
+
+    /**
+     * Maximum number of folders walked at the same time on a file store, by a
+     * path on the file store
+     */
+    private Map<String, Integer> fileStoreConcurrency = new HashMap<String, Integer>();
+
+    private int defaultFileStoreConcurrency = 0;
+
+    /**
+     * Walking permits of each file store, for the current scan
+     */
+    private final Map<FileStore, StorePermits> fileStorePermits = new HashMap<FileStore, StorePermits>();
+
+    /**
+     * File store of each root folder, for the current scan
+     */
+    private final Map<String, FileStore> rootFileStores = new HashMap<String, FileStore>();
+
+    private final ScanMetrics scanMetrics = new ScanMetrics();
+
+    /**
+     * Set when a folder could not be walked : the snapshot of an incomplete
+     * scan is not committed
+     */
+    private volatile boolean scanFailed = false;
+
+    /**
+     * Adaptive throttling : target latency of folder listings, 0 to disable
+     */
+    private long targetListingLatency = 0;
+
+    private int maxListingConcurrency = 0;
+
+    /**
+     * Throttle of the current scan, null if none
+     */
+    private volatile ListingThrottle listingThrottle;
+
+    /**
+     * Partitioned mode : this scanner only walks the share of the tree whose
+     * paths hash to its partition
+     */
+    private int partitionIndex = 0;
+
+    private int partitionCount = 1;
+
+    private int partitionDepth = 1;
+
+    /**
+     * Checkpoint mode : the traversal frontier is written to this file, and
+     * an interrupted scan resumes from it
+     */
+    private File checkpointFile;
+
+    private long checkpointInterval = 60000;
+
+    /**
+     * Checkpoint of the current scan, null if none
+     */
+    private ScanCheckpoint checkpoint;
+
+    /**
+     * Absolute paths of the roots walked by the current scan
+     */
+    private final List<String> scanRootPaths = new ArrayList<String>();
+
+    /**
+     * Normalized paths of the fully-resolved files emitted by the scan
+     */
+    private volatile Set<String> emittedResolvedFiles = Collections.emptySet();
+
+    @Override
+    protected boolean doScanOneItem()
+    {
+        ScanSnapshot snapshot = null;
+        ScanSnapshotWriter snapshotWriter = null;
+        scanLister = lister;
+        scanMetrics.reset();
+        scanFailed = false;
+        excludedExtensionSet = new ExtensionSet(excludedExtensions);
+        exclusionGlob = excludedPaths.isEmpty() ? null : GlobPattern.compilePaths(excludedPaths);
+        initFileStorePermits();
+        listingThrottle = targetListingLatency > 0 ? new ListingThrottle(targetListingLatency,
+                maxListingConcurrency > 0 ? maxListingConcurrency : getCorePoolSize() + 1) : null;
+        if (partitionCount > 1 && (partitionIndex < 0 || partitionIndex >= partitionCount || partitionDepth < 1))
+        {
+            throw new RuntimeException("Invalid partition " + partitionIndex + " of " + partitionCount + ", depth="
+                    + partitionDepth);
+        }
+        if (scanArchives)
+        {
+            if (snapshotFile != null)
+            {
+                throw new RuntimeException("Archives are not supported for incremental scans !");
+            }
+            scanLister = new ArchiveLister(lister, new ExtensionSet(archiveExtensions));
+        }
+        if (foldersModifiedSince > 0 && snapshotFile != null)
+        {
+            throw new RuntimeException("Folder modification pruning is not supported for incremental scans !");
+        }
+        if (checkpointFile != null)
+        {
+            if (snapshotFile != null || isOrderedOutput())
+            {
+                throw new RuntimeException("Checkpoints are not supported for incremental or ordered scans !");
+            }
+            try
+            {
+                checkpoint = ScanCheckpoint.open(checkpointFile, filters, checkpointInterval);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Could not open checkpoint " + checkpointFile.getAbsolutePath(), e);
+            }
+        }
+        if (snapshotFile != null)
+        {
+            try
+            {
+                snapshot = ScanSnapshot.open(snapshotFile);
+                snapshotWriter = new ScanSnapshotWriter(snapshotFile);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Could not open snapshot " + snapshotFile.getAbsolutePath(), e);
+            }
+            LOGGER.info("Incremental scan against " + snapshot);
+            scanLister = new IncrementalLister(lister, snapshot, snapshotWriter, verifyUnchangedFolders);
+        }
+        if (continuous)
+        {
+            directoryWatcher = createDirectoryWatcher();
+        }
+        boolean scanned = false;
+        try
+        {
+            if (isWorkStealing() && !isOrderedOutput())
+            {
+                doForkJoinScan();
+            }
+            else
+            {
+                doExecutorScan();
+            }
+            scanned = true;
+        }
+        finally
+        {
+            closeSnapshot(snapshot, snapshotWriter, scanned && !scanFailed && !isInterrupted());
+            closeCheckpoint();
+            scanLister = lister;
+        }
+        if (directoryWatcher != null)
+        {
+            LOGGER.info("Initial walk finished, items added=" + getTotalObjectsAdded() + ", now watching folders");
+            try
+            {
+                directoryWatcher.watch();
+            }
+            finally
+            {
+                directoryWatcher.close();
+            }
+        }
+        LOGGER.info("Total number of tasks spawned totalSpawnedThreadsNumber=" + totalSpawnedThreadsNumber.get()
+                + ", items added=" + getTotalObjectsAdded() + ", iterated=" + getTotalObjectsIterated());
+        LOGGER.info("Scan metrics : " + scanMetrics);
+        if (listingThrottle != null)
+        {
+            LOGGER.info("Listing throttle : " + listingThrottle);
+        }
+        return false;
+    }
+
+    private DirectoryWatcher createDirectoryWatcher()
+    {
+        if (!isAsync())
+        {
+            throw new RuntimeException("Continuous scanning requires async mode !");
+        }
+        try
+        {
+            return new DirectoryWatcher(lister, new DirectoryWatcher.Callback()
+            {
+                @Override
+                public void fileChanged(ScanEntry entry)
+                {
+                    if (!isExcluded(getExclusionState(entry.getFile()), false) && isClaimed(entry.getFile(), false))
+                    {
+                        addFile(entry);
+                    }
+                }
+
+                @Override
+                public void folderCreated(File folder, GlobPattern glob, long state)
+                {
+                    long exclusionState = getExclusionState(folder);
+                    String rootPath = getScanRootPath(folder);
+                    if (!isExcluded(exclusionState, true) && rootPath != null && isClaimed(folder, true))
+                    {
+                        /*
+                         * Folders created while watching are walked inline
+                         */
+                        Walk walk = new Walk(glob, Collections.<GlobPattern> emptyList(), null, rootPath);
+                        buildRecursive(folder, walk, state, exclusionState, getDepth(walk, folder));
+                    }
+                }
+
+                @Override
+                public boolean isInterrupted()
+                {
+                    return AbstractDirectoryScanner.this.isInterrupted();
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not create watch service", e);
+        }
+    }
+
+    private void initFileStorePermits()
+    {
+        synchronized (fileStorePermits)
+        {
+            fileStorePermits.clear();
+            rootFileStores.clear();
+            for (Map.Entry<String, Integer> entry : fileStoreConcurrency.entrySet())
+            {
+                try
+                {
+                    FileStore fileStore = Files.getFileStore(Paths.get(entry.getKey()));
+                    fileStorePermits.put(fileStore, new StorePermits(Math.max(1, entry.getValue())));
+                    LOGGER.info("File store " + fileStore + " limited to " + entry.getValue() + " concurrent folders");
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Could not find file store of " + entry.getKey() + " : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The file store is resolved once per root folder and scan : every folder
+     * walked from a root is charged to the file store of the root, including
+     * the folders of other file stores mounted below it.
+     * 
+     * @return the walking permits of the file store of a root folder, null if
+     *         not limited
+     */
+    private Semaphore getFileStorePermits(File rootFolder)
+    {
+        if (fileStoreConcurrency.isEmpty() && defaultFileStoreConcurrency <= 0)
+        {
+            return null;
+        }
+        String rootPath = rootFolder.getAbsolutePath();
+        synchronized (fileStorePermits)
+        {
+            FileStore fileStore = rootFileStores.get(rootPath);
+            if (fileStore == null)
+            {
+                try
+                {
+                    fileStore = Files.getFileStore(rootFolder.toPath());
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Could not find file store of " + rootPath + " : " + e.getMessage());
+                    return null;
+                }
+                rootFileStores.put(rootPath, fileStore);
+            }
+            StorePermits permits = fileStorePermits.get(fileStore);
+            if (permits == null && defaultFileStoreConcurrency > 0)
+            {
+                permits = new StorePermits(defaultFileStoreConcurrency);
+                fileStorePermits.put(fileStore, permits);
+            }
+            return permits;
+        }
+    }
+
+    /**
+     * Walking permits of a file store, keeping the peak number of permits
+     * held at the same time
+     */
+    private static final class StorePermits extends Semaphore
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicInteger held = new AtomicInteger();
+
+        private final AtomicInteger peak = new AtomicInteger();
+
+        private StorePermits(int permits)
+        {
+            super(permits);
+        }
+
+        @Override
+        public boolean tryAcquire()
+        {
+            if (!super.tryAcquire())
+            {
+                return false;
+            }
+            acquired();
+            return true;
+        }
+
+        @Override
+        public void acquireUninterruptibly()
+        {
+            super.acquireUninterruptibly();
+            acquired();
+        }
+
+        @Override
+        public void release()
+        {
+            held.decrementAndGet();
+            super.release();
+        }
+
+        private void acquired()
+        {
+            int current = held.incrementAndGet();
+            int max;
+            while (current > (max = peak.get()) && !peak.compareAndSet(max, current))
+            {
+                continue;
+            }
+        }
+
+        private int getPeak()
+        {
+            return peak.get();
+        }
+    }
+
+    private void closeCheckpoint()
+    {
+        if (checkpoint == null)
+        {
+            return;
+        }
+        try
+        {
+            checkpoint.finish(getTotalObjectsAdded());
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not write checkpoint " + checkpointFile.getAbsolutePath(), e);
+        }
+        checkpoint = null;
+    }
+
+    private void closeSnapshot(ScanSnapshot snapshot, ScanSnapshotWriter snapshotWriter, boolean commit)
+    {
+        try
+        {
+            if (snapshot != null)
+            {
+                snapshot.close();
+            }
+            if (snapshotWriter != null)
+            {
+                if (commit)
+                {
+                    snapshotWriter.commit();
+                }
+                else
+                {
+                    LOGGER.warn("Scan interrupted or failed, keeping the previous snapshot "
+                            + snapshotFile.getAbsolutePath());
+                    snapshotWriter.abort();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not write snapshot " + snapshotFile.getAbsolutePath(), e);
+        }
+    }
+
+    private void doExecutorScan()
+    {
+        buildList(filters);
+        if (executor != null)
+        {
+            while (true)
+            {
+                try
+                {
+                    executorMaybeFinished.acquire();
+                    if (VERBOSE)
+                    {
+                        LOGGER.debug("spawnedThreadsNumber=" + spawnedThreadsNumber.get());
+                    }
+                    if (spawnedThreadsNumber.get() != 0)
+                    {
+                        if (VERBOSE)
+                        {
+                            LOGGER.debug("Still some work to do here !");
+                        }
+                        continue;
+                    }
+                    if (VERBOSE)
+                    {
+                        LOGGER.debug("Shutdown !");
+                    }
+                    executor.shutdown();
+                    executor.awaitTermination(60, TimeUnit.MINUTES);
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    LOGGER.error("Caught exception", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Work-stealing scan : every folder is a {@link ScanTask} forked in the
+     * pool, so that idle workers steal pending folders from busy ones. The
+     * scan is finished when the root task has joined all of its descendants.
+     */
+    private void doForkJoinScan()
+    {
+        executor.shutdown();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, getCorePoolSize()));
+        try
+        {
+            pool.invoke(new ScanTask(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buildList(filters);
+                }
+            }, "root"));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The task being computed by the current fork/join worker
+     */
+    private final ThreadLocal<ScanTask> currentScanTask = new ThreadLocal<ScanTask>();
+
+    private final class ScanTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Runnable runnable;
+
+        private final String context;
+
+        private List<ScanTask> children;
+
+        private ScanTask(Runnable runnable, String context)
+        {
+            this.runnable = runnable;
+            this.context = context;
+        }
+
+        private void fork(ScanTask child)
+        {
+            if (children == null)
+            {
+                children = new ArrayList<ScanTask>();
+            }
+            children.add(child);
+            child.fork();
+        }
+
+        @Override
+        protected void compute()
+        {
+            ScanTask parent = currentScanTask.get();
+            currentScanTask.set(this);
+            try
+            {
+                runnable.run();
+            }
+            catch (Exception e)
+            {
+                walkFailed(context, e);
+            }
+            finally
+            {
+                currentScanTask.set(parent);
+            }
+            if (children != null)
+            {
+                /*
+                 * Drop each child once joined, so that completed subtrees are
+                 * not retained until the scan ends ; the last forked are
+                 * joined first, as they are likely still queued here
+                 */
+                for (int idx = children.size() - 1; idx >= 0; idx--)
+                {
+                    children.remove(idx).join();
+                }
+                children = null;
+            }
+        }
+    }
+
+    private final Semaphore executorMaybeFinished = new Semaphore(1);
+
+    private final AtomicInteger spawnedThreadsNumber = new AtomicInteger();
+
+    private final AtomicInteger totalSpawnedThreadsNumber = new AtomicInteger();
+
+    /**
+     * @param storePermits
+     *            the walking permits of the file store of the task, null if
+     *            not limited : the task is only spawned if a permit is
+     *            available, and runs inline otherwise
+     */
+    private void mayspawn(Runnable runnable, final String context, boolean spawnable, Semaphore storePermits)
+    {
+        ScanTask scanTask = currentScanTask.get();
+        if (scanTask != null)
+        {
+            if (storePermits == null || storePermits.tryAcquire())
+            {
+                totalSpawnedThreadsNumber.incrementAndGet();
+                scanMetrics.taskForked();
+                scanTask.fork(new ScanTask(withPermit(runnable, storePermits), context));
+                return;
+            }
+            spawnable = false;
+        }
+        if (VERBOSE)
+        {
+            LOGGER.debug("Current executor load : active=" + executor.getActiveCount() + ", queue="
+                    + executor.getQueue().size());
+        }
+        if (executor == null || executor.isShutdown())
+        {
+            spawnable = false;
+        }
+        if (spawnable && (executor.getActiveCount() + executor.getQueue().size()) < executor.getCorePoolSize() * 2
+                && (storePermits == null || storePermits.tryAcquire()))
+        {
+            final Runnable task = withPermit(runnable, storePermits);
+            spawnedThreadsNumber.incrementAndGet();
+            totalSpawnedThreadsNumber.incrementAndGet();
+            scanMetrics.taskForked();
+            executor.execute(new Runnable()
+            {
+
+                @Override
+                public void run()
+                {
+                    if (VERBOSE)
+                    {
+                        LOGGER.debug("Started thread ! spawnedThreadsNumber=" + spawnedThreadsNumber.get()
+                                + ", context=" + context);
+                    }
+                    try
+                    {
+                        task.run();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        walkFailed(context, e);
+                    }
+                    finally
+                    {
+                        if (VERBOSE)
+                        {
+                            LOGGER.debug("Finished thread ! context=" + context);
+                        }
+                        spawnedThreadsNumber.decrementAndGet();
+                        executorMaybeFinished.release();
+                    }
+                }
+            });
+            return;
+        }
+        scanMetrics.taskInlined();
+        try
+        {
+            runnable.run();
+        }
+        catch (Exception e)
+        {
+            walkFailed(context, e);
+        }
+    }
+
+    /**
+     * A folder task failed, or was stopped by {@link #interruptParsing()} :
+     * the scan goes on, but is incomplete
+     */
+    private void walkFailed(String context, Throwable e)
+    {
+        scanFailed = true;
+        if (isInterrupted())
+        {
+            LOGGER.info("Scan interrupted at " + context + " : " + e.getMessage());
+            return;
+        }
+        LOGGER.error("Caught exception at " + context, e);
+    }
+
+    /**
+     * @return the runnable, releasing a permit once run
+     */
+    private static Runnable withPermit(final Runnable runnable, final Semaphore permits)
+    {
+        if (permits == null)
+        {
+            return runnable;
+        }
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    runnable.run();
+                }
+                finally
+                {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    private void buildList(List<String> paths)
+    {
+        ScanPlanner planner = new ScanPlanner(paths);
+        if (VERBOSE)
+        {
+            LOGGER.debug("Planned " + paths.size() + " filters : " + planner);
+        }
+        Set<String> emitted = new HashSet<String>();
+        if (checkpoint == null || !checkpoint.isResuming())
+        {
+            for (String path : planner.getResolvedPaths())
+            {
+                buildResolvedFile(path, emitted);
+            }
+        }
+        emittedResolvedFiles = emitted;
+        int total = planner.getRoots().size();
+        int nb = 0;
+        synchronized (scanRootPaths)
+        {
+            scanRootPaths.clear();
+            for (ScanPlanner.Root root : planner.getRoots())
+            {
+                scanRootPaths.add(root.getFolder().getAbsolutePath());
+            }
+        }
+        for (ScanPlanner.Root root : planner.getRoots())
+        {
+            if (VERBOSE)
+            {
+                LOGGER.debug("At root '" + root + "', (" + nb + " of " + total + ").");
+            }
+            buildList(root, nb);
+            nb++;
+        }
+    }
+
+    /**
+     * @return true if the file was emitted as a fully-resolved path, so that
+     *         walks matching it do not emit it again
+     */
+    private boolean isResolvedFileEmitted(File file)
+    {
+        Set<String> emitted = emittedResolvedFiles;
+        return !emitted.isEmpty() && emitted.contains(getNormalizedPath(file));
+    }
+
+    private static String getNormalizedPath(File file)
+    {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    private void buildResolvedFile(String path, Set<String> emitted)
+    {
+        File resolvedFile = new File(path);
+        if (resolvedFile.exists())
+        {
+            if (VERBOSE)
+            {
+                LOGGER.debug("Found fully-resolved file : '" + resolvedFile.getAbsolutePath() + "'");
+            }
+            if (!isExcluded(getExclusionState(resolvedFile), false) && isClaimed(path.replace('\\', '/'))
+                    && emitted.add(getNormalizedPath(resolvedFile)))
+            {
+                addFile(new ScanEntry(resolvedFile));
+            }
+        }
+    }
+
+    private void buildList(ScanPlanner.Root root, int rootIndex)
+    {
+        File rootFolder = root.getFolder();
+        if (!rootFolder.exists())
+        {
+            LOGGER.debug("Path '" + rootFolder.getPath() + "' does not exist !");
+            return;
+        }
+        if (!rootFolder.isDirectory())
+        {
+            throw new RuntimeException("Path '" + rootFolder.getPath() + "' is not a folder !");
+        }
+        long exclusionState = getExclusionState(rootFolder);
+        if (isExcluded(exclusionState, true))
+        {
+            LOGGER.info("Root folder " + rootFolder.getAbsolutePath() + " is excluded");
+            return;
+        }
+        Semaphore storePermits = getFileStorePermits(rootFolder);
+        List<GlobPattern> globs = root.compile();
+        for (int globIndex = 0; globIndex < globs.size(); globIndex++)
+        {
+            GlobPattern glob = globs.get(globIndex);
+            Walk walk = new Walk(glob, globs.subList(0, globIndex), storePermits, rootFolder.getAbsolutePath());
+            if (VERBOSE)
+            {
+                LOGGER.debug("Calling buildRecursive() with rootFolder=" + rootFolder.getAbsolutePath() + ", glob="
+                        + glob);
+            }
+            if (storePermits != null)
+            {
+                storePermits.acquireUninterruptibly();
+            }
+            try
+            {
+                if (checkpoint != null)
+                {
+                    buildCheckpointed(rootFolder, walk, exclusionState, rootIndex, globIndex);
+                }
+                else if (isOrderedOutput())
+                {
+                    buildOrdered(rootFolder, walk, glob.getInitialState(), exclusionState);
+                }
+                else
+                {
+                    buildRecursive(rootFolder, walk, glob.getInitialState(), exclusionState, 0);
+                }
+            }
+            finally
+            {
+                if (storePermits != null)
+                {
+                    storePermits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checkpoint mode : start a walk, or resume it from the checkpoint
+     */
+    private void buildCheckpointed(File rootFolder, final Walk walk, long exclusionState, int rootIndex, int globIndex)
+    {
+        if (!checkpoint.isResumed(rootIndex, globIndex))
+        {
+            ScanCheckpoint.Folder root = new ScanCheckpoint.Folder(rootFolder, rootIndex, globIndex,
+                    walk.glob.getInitialState(), 0, null);
+            checkpoint.startWalk(root);
+            buildTracked(root, walk, exclusionState);
+            return;
+        }
+        for (final ScanCheckpoint.Folder folder : checkpoint.getResumedFolders(rootIndex, globIndex))
+        {
+            checkpoint.resume(folder);
+            mayspawn(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buildTracked(folder, walk, getExclusionState(folder.getFolder()));
+                }
+            }, folder.getFolder().getAbsolutePath(), true, walk.storePermits);
+        }
+    }
+
+    /**
+     * Checkpoint mode : list a folder of the frontier, then walk its
+     * subfolders once they entered the frontier
+     */
+    private void buildTracked(final ScanCheckpoint.Folder folder, final Walk walk, long exclusionState)
+    {
+        if (isInterrupted())
+        {
+            /*
+             * Left in the frontier, for the next scan
+             */
+            return;
+        }
+        final List<ScanCheckpoint.Folder> children = new ArrayList<ScanCheckpoint.Folder>();
+        final List<Long> childExclusionStates = new ArrayList<Long>();
+        listFolder(folder.getFolder(), walk, folder.getState(), exclusionState, folder.getDepth(),
+                new FolderVisitor()
+                {
+                    @Override
+                    public void folderFound(ScanEntry child, long childState, long childExclusionState)
+                    {
+                        children.add(new ScanCheckpoint.Folder(child.getFile(), folder.getRootIndex(), folder
+                                .getGlobIndex(), childState, folder.getDepth() + 1, null));
+                        childExclusionStates.add(childExclusionState);
+                    }
+
+                    @Override
+                    public void fileFound(ScanEntry child)
+                    {
+                        if (folder.isEmitted(child.getName()))
+                        {
+                            return;
+                        }
+                        addFile(child);
+                        folder.setLastName(child.getName());
+                    }
+                });
+        checkpoint.folderListed(folder, children);
+        checkpoint.maybeWrite(getTotalObjectsAdded());
+        for (int idx = 0; idx < children.size(); idx++)
+        {
+            final ScanCheckpoint.Folder child = children.get(idx);
+            final long childExclusionState = childExclusionStates.get(idx);
+            mayspawn(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    buildTracked(child, walk, childExclusionState);
+                }
+            }, child.getFolder().getAbsolutePath(), true, walk.storePermits);
+        }
+    }
+
+    /**
+     * The walk of a root folder with an automaton
+     */
+    private static final class Walk
+    {
+        private final GlobPattern glob;
+
+        /**
+         * The automata the root was walked with before this one, when its
+         * globs do not fit in one
+         */
+        private final List<GlobPattern> previousGlobs;
+
+        /**
+         * The walking permits of the file store of the root, null if not
+         * limited
+         */
+        private final Semaphore storePermits;
+
+        /**
+         * Length of the absolute path of the root, with its separator
+         */
+        private final int rootPathLength;
+
+        private Walk(GlobPattern glob, List<GlobPattern> previousGlobs, Semaphore storePermits, String rootPath)
+        {
+            this.glob = glob;
+            this.previousGlobs = previousGlobs;
+            this.storePermits = storePermits;
+            this.rootPathLength = rootPath.endsWith(File.separator) ? rootPath.length() : rootPath.length() + 1;
+        }
+
+        /**
+         * @return the path of a file of the walk, relative to the root, with
+         *         '/' separators
+         */
+        private String getRelativePath(File file)
+        {
+            String path = file.getAbsolutePath();
+            String relativePath = path.length() > rootPathLength ? path.substring(rootPathLength) : "";
+            return File.separatorChar == '/' ? relativePath : relativePath.replace(File.separatorChar, '/');
+        }
+
+        /**
+         * @return true if the file was emitted by a previous walk of the root
+         */
+        private boolean isMatchedBefore(File file)
+        {
+            if (previousGlobs.isEmpty())
+            {
+                return false;
+            }
+            String[] names = GlobPattern.splitPath(getRelativePath(file));
+            for (GlobPattern previous : previousGlobs)
+            {
+                if (previous.matches(previous.step(previous.getInitialState(), names)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the absolute path of the root of the current scan holding a
+     *         file, null if none
+     */
+    private String getScanRootPath(File file)
+    {
+        String path = file.getAbsolutePath();
+        synchronized (scanRootPaths)
+        {
+            for (String rootPath : scanRootPaths)
+            {
+                if (path.startsWith(rootPath) && (path.length() == rootPath.length() || rootPath.endsWith(File.separator)
+                        || path.charAt(rootPath.length()) == File.separatorChar))
+                {
+                    return rootPath;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int getDepth(Walk walk, File file)
+    {
+        String relativePath = walk.getRelativePath(file);
+        if (relativePath.isEmpty())
+        {
+            return 0;
+        }
+        int depth = 1;
+        for (int idx = 0; idx < relativePath.length(); idx++)
+        {
+            if (relativePath.charAt(idx) == '/')
+            {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * In partitioned mode, check if an entry belongs to this partition : its
+     * path relative to its root, cut to {@link #partitionDepth} folders, is
+     * hashed
+     * 
+     * @param relativePath
+     *            the path relative to the root, with '/' separators
+     */
+    private boolean isClaimedRelativePath(String relativePath)
+    {
+        int end = -1;
+        for (int depth = 0; depth < partitionDepth; depth++)
+        {
+            end = relativePath.indexOf('/', end + 1);
+            if (end < 0)
+            {
+                return isClaimed(relativePath);
+            }
+        }
+        return isClaimed(relativePath.substring(0, end));
+    }
+
+    /**
+     * @param key
+     *            the key of an entry, the same in all partitions
+     * @return true if the entry belongs to this partition
+     */
+    private boolean isClaimed(String key)
+    {
+        if (partitionCount <= 1)
+        {
+            return true;
+        }
+        long hash = ScanSnapshot.hash(key.getBytes(ScanSnapshot.UTF8));
+        /*
+         * Mix the bits : FNV-1a alone spreads similar paths badly over a
+         * small modulo
+         */
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash >>> 1) % partitionCount == partitionIndex;
+    }
+
+    /**
+     * In partitioned mode, check if an entry of the current scan, seen
+     * outside of a walk, belongs to this partition
+     */
+    private boolean isClaimed(File file, boolean directory)
+    {
+        if (partitionCount <= 1)
+        {
+            return true;
+        }
+        String rootPath = getScanRootPath(file);
+        if (rootPath == null)
+        {
+            return false;
+        }
+        Walk walk = new Walk(null, Collections.<GlobPattern> emptyList(), null, rootPath);
+        if (directory && getDepth(walk, file) < partitionDepth)
+        {
+            return true;
+        }
+        return isClaimedRelativePath(walk.getRelativePath(file));
+    }
+
+    /**
+     * @return the state of a path in {@link #exclusionGlob}, walked from the
+     *         file system root
+     */
+    private long getExclusionState(File file)
+    {
+        if (exclusionGlob == null)
+        {
+            return GlobPattern.DEAD_STATE;
+        }
+        String path = file.toPath().toAbsolutePath().normalize().toString();
+        return exclusionGlob.step(exclusionGlob.getInitialState(), GlobPattern.splitPath(path));
+    }
+
+    /**
+     * @param exclusionState
+     *            the state of a path in {@link #exclusionGlob}
+     * @param directory
+     *            true if the path is a folder
+     * @return true if the path is excluded, or is a folder whose descendants
+     *         are all excluded
+     */
+    private boolean isExcluded(long exclusionState, boolean directory)
+    {
+        if (exclusionState == GlobPattern.DEAD_STATE)
+        {
+            return false;
+        }
+        return exclusionGlob.matches(exclusionState)
+                || (directory && exclusionGlob.matchesAllDescendants(exclusionState));
+    }
+
+    private void doListFiles(File parent, DirectoryLister.EntryVisitor visitor)
+    {
+        scanLister.listChildren(parent, isSortFolderChildren() || isOrderedOutput() || checkpoint != null, visitor);
+    }
+
+    /**
+     * Receives the children of a listed folder that survive the globs and
+     * exclusions
+     */
+    private interface FolderVisitor
+    {
+        void folderFound(ScanEntry child, long childState, long childExclusionState);
+
+        void fileFound(ScanEntry child);
+    }
+
+    /**
+     * A child found while the listing permit was held, handled once released
+     */
+    private static final class FoundChild
+    {
+        private final ScanEntry entry;
+
+        private final long state;
+
+        private final long exclusionState;
+
+        private final boolean folder;
+
+        private FoundChild(ScanEntry entry, long state, long exclusionState, boolean folder)
+        {
+            this.entry = entry;
+            this.state = state;
+            this.exclusionState = exclusionState;
+            this.folder = folder;
+        }
+    }
+
+    /**
+     * @return true if the attributes of matching files are read to build the
+     *         result, so that throttled listings read them while holding the
+     *         listing permit
+     */
+    boolean readsFileAttributes()
+    {
+        return !fileAttributeFilters.isEmpty();
+    }
+
+    private void buildRecursive(File folder, final Walk walk, long state, long exclusionState, final int depth)
+    {
+        /*
+         * Consecutive matching files are published at once, up to a batch
+         */
+        final List<T> batch = new ArrayList<T>();
+        listFolder(folder, walk, state, exclusionState, depth, new FolderVisitor()
+        {
+            @Override
+            public void folderFound(final ScanEntry child, final long childState, final long childExclusionState)
+            {
+                flushFiles(batch);
+                mayspawn(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        buildRecursive(child.getFile(), walk, childState, childExclusionState, depth + 1);
+                    }
+                }, child.getAbsolutePath(), true, walk.storePermits);
+            }
+
+            @Override
+            public void fileFound(ScanEntry child)
+            {
+                T obj = acceptFile(child);
+                if (obj != null)
+                {
+                    batch.add(obj);
+                    if (batch.size() >= FILE_BATCH_SIZE)
+                    {
+                        flushFiles(batch);
+                    }
+                }
+            }
+        });
+        flushFiles(batch);
+    }
+
+    private void flushFiles(List<T> batch)
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        if (batch.size() == 1)
+        {
+            addObject(batch.get(0));
+        }
+        else
+        {
+            addObjects(batch);
+        }
+        batch.clear();
+    }
+
+    /**
+     * @param depth
+     *            the depth of the folder below its root
+     */
+    private void listFolder(File folder, final Walk walk, final long state, final long exclusionState,
+            final int depth, final FolderVisitor folderVisitor)
+    {
+        final GlobPattern glob = walk.glob;
+        /*
+         * In partitioned mode, the children of shallow folders are claimed by
+         * a single partition
+         */
+        final boolean claiming = partitionCount > 1 && depth < partitionDepth;
+        if (VERBOSE)
+        {
+            LOGGER.debug("At buildRecursive(), folder=" + folder.getAbsolutePath() + ", glob=" + glob + ", state="
+                    + Long.toBinaryString(state));
+        }
+        if (directoryWatcher != null && !(folder instanceof ArchiveFile))
+        {
+            directoryWatcher.register(folder, glob, state);
+        }
+        /*
+         * Children are handled while listing : the time spent there, walking
+         * subfolders inline or waiting for the queue, is not listing latency
+         */
+        final long[] handling = new long[2];
+        final ListingThrottle throttle = listingThrottle;
+        /*
+         * Throttled listings filter children and read their attributes while
+         * holding the permit, so that the throttle accounts for the stats ;
+         * only the files found and the folders to walk are buffered, and
+         * handled once the permit is released
+         */
+        final List<FoundChild> found = throttle != null ? new ArrayList<FoundChild>() : null;
+        final FolderVisitor target = throttle == null ? folderVisitor : new FolderVisitor()
+        {
+            @Override
+            public void folderFound(ScanEntry child, long childState, long childExclusionState)
+            {
+                found.add(new FoundChild(child, childState, childExclusionState, true));
+            }
+
+            @Override
+            public void fileFound(ScanEntry child)
+            {
+                if (readsFileAttributes())
+                {
+                    child.readAttributes();
+                }
+                found.add(new FoundChild(child, 0, 0, false));
+            }
+        };
+        DirectoryLister.EntryVisitor visitor = new DirectoryLister.EntryVisitor()
+        {
+            @Override
+            public void visit(ScanEntry child)
+            {
+                handling[1]++;
+                long childState = glob.step(state, child.getName());
+                if (childState == GlobPattern.DEAD_STATE)
+                {
+                    return;
+                }
+                long childExclusionState = exclusionState == GlobPattern.DEAD_STATE ? exclusionState
+                        : exclusionGlob.step(exclusionState, child.getName());
+                if (childExclusionState != GlobPattern.DEAD_STATE && exclusionGlob.matches(childExclusionState))
+                {
+                    if (VERBOSE)
+                    {
+                        LOGGER.debug("Excluded : " + child.getAbsolutePath());
+                    }
+                    return;
+                }
+                if (child.isDirectory())
+                {
+                    if (isExcluded(childExclusionState, true))
+                    {
+                        if (VERBOSE)
+                        {
+                            LOGGER.debug("Excluded folder : " + child.getAbsolutePath());
+                        }
+                    }
+                    else if (claiming && depth + 1 == partitionDepth
+                            && !isClaimedRelativePath(walk.getRelativePath(child.getFile())))
+                    {
+                        if (VERBOSE)
+                        {
+                            LOGGER.debug("Folder of another partition : " + child.getAbsolutePath());
+                        }
+                    }
+                    else if (foldersModifiedSince > 0 && child.readAttributes()
+                            && child.getLastModified() < foldersModifiedSince)
+                    {
+                        if (VERBOSE)
+                        {
+                            LOGGER.debug("Folder not modified : " + child.getAbsolutePath());
+                        }
+                    }
+                    else if (glob.canDescend(childState))
+                    {
+                        long handlingStart = System.nanoTime();
+                        target.folderFound(child, childState, childExclusionState);
+                        handling[0] += System.nanoTime() - handlingStart;
+                    }
+                    else if (VERBOSE)
+                    {
+                        LOGGER.debug("Pruned folder : " + child.getAbsolutePath());
+                    }
+                }
+                else if (glob.matches(childState)
+                        && (!claiming || isClaimedRelativePath(walk.getRelativePath(child.getFile())))
+                        && !walk.isMatchedBefore(child.getFile()) && !isResolvedFileEmitted(child.getFile()))
+                {
+                    long handlingStart = System.nanoTime();
+                    target.fileFound(child);
+                    handling[0] += System.nanoTime() - handlingStart;
+                }
+            }
+        };
+        long start = System.nanoTime();
+        if (throttle != null)
+        {
+            if (!throttle.acquire())
+            {
+                LOGGER.warn("Interrupted before listing folder : " + folder.getAbsolutePath());
+                return;
+            }
+            long listingStart = System.nanoTime();
+            try
+            {
+                doListFiles(folder, visitor);
+            }
+            finally
+            {
+                throttle.release(System.nanoTime() - listingStart);
+            }
+            /*
+             * The permit is not held while walking subfolders inline
+             */
+            long handlingStart = System.nanoTime();
+            for (FoundChild child : found)
+            {
+                if (child.folder)
+                {
+                    folderVisitor.folderFound(child.entry, child.state, child.exclusionState);
+                }
+                else
+                {
+                    folderVisitor.fileFound(child.entry);
+                }
+            }
+            handling[0] += System.nanoTime() - handlingStart;
+        }
+        else
+        {
+            doListFiles(folder, visitor);
+        }
+        scanMetrics.folderListed(folder.getPath(), System.nanoTime() - start - handling[0], (int) handling[1]);
+    }
+
+    /**
+     * Ordered mode : walk a folder in tree order, emitting its files and the
+     * files of its subfolders by name, folders being listed ahead by the
+     * executor
+     */
+    private void buildOrdered(File folder, Walk walk, long state, long exclusionState)
+    {
+        orderedPrefetchPermits = new Semaphore(orderedPrefetchLimit);
+        new OrderedFolder(folder, walk, state, exclusionState, 0).emit();
+    }
+
+    /**
+     * Permits to list a folder ahead of the emitting thread, bounding the
+     * listings waiting to be emitted
+     */
+    private Semaphore orderedPrefetchPermits;
+
+    /**
+     * A folder of an ordered scan. Its listing, with children sorted by name,
+     * is computed once : by an executor worker when prefetched, or by the
+     * emitting thread when reaching it first. Once its listing is done, its
+     * subfolders are prefetched as long as permits are available.
+     */
+    private final class OrderedFolder implements Runnable
+    {
+        private final File folder;
+
+        private final Walk walk;
+
+        private final long state;
+
+        private final long exclusionState;
+
+        private final int depth;
+
+        /**
+         * Matching files and folders to descend, by name
+         */
+        private final List<ScanEntry> entries = new ArrayList<ScanEntry>();
+
+        /**
+         * The folder of each entry, null for files
+         */
+        private final List<OrderedFolder> folders = new ArrayList<OrderedFolder>();
+
+        private final FutureTask<Void> listing = new FutureTask<Void>(this, null);
+
+        private volatile boolean prefetched;
+
+        private OrderedFolder(File folder, Walk walk, long state, long exclusionState, int depth)
+        {
+            this.folder = folder;
+            this.walk = walk;
+            this.state = state;
+            this.exclusionState = exclusionState;
+            this.depth = depth;
+        }
+
+        @Override
+        public void run()
+        {
+            listFolder(folder, walk, state, exclusionState, depth, new FolderVisitor()
+            {
+                @Override
+                public void folderFound(ScanEntry child, long childState, long childExclusionState)
+                {
+                    entries.add(child);
+                    folders.add(new OrderedFolder(child.getFile(), walk, childState, childExclusionState, depth + 1));
+                }
+
+                @Override
+                public void fileFound(ScanEntry child)
+                {
+                    entries.add(child);
+                    folders.add(null);
+                }
+            });
+            for (OrderedFolder child : folders)
+            {
+                if (child == null || executor.isShutdown() || !orderedPrefetchPermits.tryAcquire())
+                {
+                    continue;
+                }
+                if (walk.storePermits != null && !walk.storePermits.tryAcquire())
+                {
+                    orderedPrefetchPermits.release();
+                    continue;
+                }
+                child.prefetched = true;
+                totalSpawnedThreadsNumber.incrementAndGet();
+                scanMetrics.taskForked();
+                executor.execute(withPermit(child.listing, walk.storePermits));
+            }
+        }
+
+        /**
+         * Emit the files of the folder and of its subfolders, in tree order.
+         * Called by the emitting thread only.
+         */
+        private void emit()
+        {
+            /*
+             * Does nothing if a worker already started listing the folder
+             */
+            listing.run();
+            try
+            {
+                listing.get();
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException("Interrupted while listing " + folder.getAbsolutePath(), e);
+            }
+            catch (ExecutionException e)
+            {
+                walkFailed(folder.getAbsolutePath(), e.getCause());
+            }
+            finally
+            {
+                if (prefetched)
+                {
+                    orderedPrefetchPermits.release();
+                }
+            }
+            for (int idx = 0; idx < entries.size(); idx++)
+            {
+                OrderedFolder child = folders.get(idx);
+                if (child == null)
+                {
+                    addFile(entries.get(idx));
+                }
+                else
+                {
+                    folders.set(idx, null);
+                    child.emit();
+                }
+            }
+            entries.clear();
+            folders.clear();
+        }
+    }
+
+    private void addFile(ScanEntry file)
+    {
+        T obj = acceptFile(file);
+        if (obj != null)
+        {
+            addObject(obj);
+        }
+    }
+
+    /**
+     * @return the object to emit for a matching file, or null if filtered out
+     */
+    private T acceptFile(ScanEntry file)
+    {
+        if (excludedExtensionSet != null && !excludedExtensionSet.isEmpty()
+                && excludedExtensionSet.containsExtensionOf(file.getName()))
+        {
+            if (VERBOSE)
+            {
+                LOGGER.debug("Filter out file : " + file.getAbsolutePath());
+            }
+            return null;
+        }
+        if (isFilterOutInconsistentNames())
+        {
+            String filename = file.getName();
+            for (int chr = 0; chr < filename.length(); chr++)
+            {
+                int codePoint = filename.codePointAt(chr);
+                if (codePoint < 0x20)
+                {
+                    LOGGER.warn("Invalid character for file: " + file.getAbsolutePath());
+                    return null;
+                }
+            }
+        }
+        ScanChange change = file.getChange();
+        if (change != null && change != ScanChange.UNCHANGED)
+        {
+            if (scanChangeListener != null)
+            {
+                scanChangeListener.fileChanged(file.getAbsolutePath(), change);
+            }
+            if (change == ScanChange.REMOVED)
+            {
+                return null;
+            }
+        }
+        if (change == ScanChange.UNCHANGED && !emitUnchangedFiles)
+        {
+            return null;
+        }
+        if (!fileAttributeFilters.isEmpty() && !acceptAttributes(file))
+        {
+            return null;
+        }
+        scanMetrics.fileMatched();
+        return toObject(file);
+    }
+
+    private boolean acceptAttributes(ScanEntry file)
+    {
+        if (!file.readAttributes())
+        {
+            return false;
+        }
+        for (FileAttributeFilter filter : fileAttributeFilters)
+        {
+            if (!filter.accept(file.getFile(), file.getSize(), file.getLastModified()))
+            {
+                if (VERBOSE)
+                {
+                    LOGGER.debug("Filter out file by attributes : " + file.getAbsolutePath() + ", filter=" + filter);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build the object emitted for a matching file
+     * 
+     * @param file
+     *            the matching file
+     * @return the object to emit
+     */
+    abstract T toObject(ScanEntry file);
+
+    public void setFilters(List<String> filters)
+    {
+        this.filters = filters;
+    }
+
+    public List<String> getFilters()
+    {
+        return this.filters;
+    }
+
+    public List<String> getExcludedExtensions()
+    {
+        return excludedExtensions;
+    }
+
+    /**
+     * Set the extensions of files to filter out, matched case-insensitively
+     * 
+     * @param excludedExtensions
+     *            the extensions, without '.'
+     */
+    public void setExcludedExtensions(List<String> excludedExtensions)
+    {
+        this.excludedExtensions = excludedExtensions;
+    }
+
+    public List<String> getExcludedPaths()
+    {
+        return excludedPaths;
+    }
+
+    /**
+     * Set the globs of paths to exclude, such as '**&#47;.snapshot/**',
+     * '**&#47;node_modules' or '**&#47;tmp*'. They are matched against
+     * absolute paths while walking : an excluded folder, or a folder whose
+     * descendants are all excluded, is never listed.
+     * 
+     * @param excludedPaths
+     *            the globs
+     */
+    public void setExcludedPaths(List<String> excludedPaths)
+    {
+        this.excludedPaths = excludedPaths;
+    }
+
+    public void setCorePoolSize(int corePoolSize)
+    {
+        if (executor != null)
+        {
+            executor.setCorePoolSize(corePoolSize);
+        }
+    }
+
+    public int getCorePoolSize()
+    {
+        if (executor != null)
+        {
+            return executor.getCorePoolSize();
+        }
+        return 0;
+    }
+
+    public boolean isFilterOutInconsistentNames()
+    {
+        return filterOutInconsistentNames;
+    }
+
+    public void setFilterOutInconsistentNames(boolean filterOutInconsistentNames)
+    {
+        this.filterOutInconsistentNames = filterOutInconsistentNames;
+    }
+
+    public boolean isSortFolderChildren()
+    {
+        return sortFolderChildren;
+    }
+
+    public void setSortFolderChildren(boolean sortFolderChildren)
+    {
+        this.sortFolderChildren = sortFolderChildren;
+    }
+
+    public TraversalEngine getTraversalEngine()
+    {
+        return traversalEngine;
+    }
+
+    /**
+     * Select the engine used to list folders
+     * 
+     * @param traversalEngine
+     *            {@link TraversalEngine#FILE} (default),
+     *            {@link TraversalEngine#NIO} or
+     *            {@link TraversalEngine#STREAM}
+     */
+    public void setTraversalEngine(TraversalEngine traversalEngine)
+    {
+        this.traversalEngine = traversalEngine;
+        this.lister = traversalEngine.createLister();
+    }
+
+    public boolean isWorkStealing()
+    {
+        return workStealing;
+    }
+
+    /**
+     * Use a work-stealing {@link ForkJoinPool} of {@link #getCorePoolSize()}
+     * workers, where every folder is a task, instead of the executor
+     * 
+     * @param workStealing
+     *            true to use the work-stealing scheduler
+     */
+    public void setWorkStealing(boolean workStealing)
+    {
+        this.workStealing = workStealing;
+    }
+
+    public File getSnapshotFile()
+    {
+        return snapshotFile;
+    }
+
+    /**
+     * Enable incremental scanning : folders whose modification time did not
+     * change since the snapshot are not listed, and only files added or
+     * modified since the snapshot are emitted. The snapshot is rewritten at
+     * the end of each scan, and is only meaningful for the same filters.
+     * 
+     * @param snapshotFile
+     *            the snapshot file, created by the first scan ; null to
+     *            disable incremental scanning
+     */
+    public void setSnapshotFile(File snapshotFile)
+    {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public List<FileAttributeFilter> getFileAttributeFilters()
+    {
+        return fileAttributeFilters;
+    }
+
+    /**
+     * Filter files matching the scan filters on their attributes, see
+     * {@link FileAttributeFilters}. Attributes are read with the file type
+     * with {@link TraversalEngine#NIO}, and for matching files only
+     * otherwise.
+     * 
+     * @param fileAttributeFilters
+     *            the filters a file must all accept to be emitted
+     */
+    public void setFileAttributeFilters(List<FileAttributeFilter> fileAttributeFilters)
+    {
+        this.fileAttributeFilters = fileAttributeFilters;
+    }
+
+    public void addFileAttributeFilter(FileAttributeFilter fileAttributeFilter)
+    {
+        this.fileAttributeFilters.add(fileAttributeFilter);
+    }
+
+    public boolean isScanArchives()
+    {
+        return scanArchives;
+    }
+
+    /**
+     * Walk archives as folders : the entries of an archive are listed from its
+     * central directory, without extracting them, and emitted as the path of
+     * the archive followed by the path of the entry, so that filters match
+     * entries as files of a folder named after the archive. Archives are no
+     * longer emitted as files then. Open the entries with
+     * {@link ArchiveEntries#open(String)}. Archives in archives are not
+     * walked, nor watched in continuous mode, and incremental scans are not
+     * supported.
+     * 
+     * @param scanArchives
+     *            true to walk the archives of {@link #getArchiveExtensions()}
+     */
+    public void setScanArchives(boolean scanArchives)
+    {
+        this.scanArchives = scanArchives;
+    }
+
+    public List<String> getArchiveExtensions()
+    {
+        return archiveExtensions;
+    }
+
+    /**
+     * @param archiveExtensions
+     *            the extensions of the zip archives walked, "zip" and "jar" by
+     *            default
+     */
+    public void setArchiveExtensions(List<String> archiveExtensions)
+    {
+        this.archiveExtensions = archiveExtensions;
+    }
+
+    public long getFoldersModifiedSince()
+    {
+        return foldersModifiedSince;
+    }
+
+    /**
+     * Prune the subfolders of the roots last modified before a time. A folder
+     * modification time only changes when entries are added, removed or
+     * renamed right in it : this suits trees where files are written once in
+     * fresh folders, such as spools or date-based archives, combined with a
+     * {@link FileAttributeFilters#modifiedSince(long)} filter of the same
+     * time. Files modified in place, or added to deeper folders of an old
+     * folder, are missed. Not supported with incremental scans.
+     * 
+     * @param foldersModifiedSince
+     *            the time in milliseconds, 0 to walk all folders
+     */
+    public void setFoldersModifiedSince(long foldersModifiedSince)
+    {
+        this.foldersModifiedSince = foldersModifiedSince;
+    }
+
+    public boolean isEmitUnchangedFiles()
+    {
+        return emitUnchangedFiles;
+    }
+
+    /**
+     * In incremental mode, also emit the files unchanged since the snapshot,
+     * served from the snapshot for unchanged folders
+     * 
+     * @param emitUnchangedFiles
+     *            true to emit the full set of files
+     */
+    public void setEmitUnchangedFiles(boolean emitUnchangedFiles)
+    {
+        this.emitUnchangedFiles = emitUnchangedFiles;
+    }
+
+    public boolean isVerifyUnchangedFolders()
+    {
+        return verifyUnchangedFolders;
+    }
+
+    /**
+     * In incremental mode, read the attributes of the files of unchanged
+     * folders, to detect files modified in place (which does not change the
+     * modification time of their folder). Folders are still not listed.
+     * 
+     * @param verifyUnchangedFolders
+     *            true to check files of unchanged folders
+     */
+    public void setVerifyUnchangedFolders(boolean verifyUnchangedFolders)
+    {
+        this.verifyUnchangedFolders = verifyUnchangedFolders;
+    }
+
+    public ScanChangeListener getScanChangeListener()
+    {
+        return scanChangeListener;
+    }
+
+    /**
+     * In incremental mode, be notified of files added, modified and removed
+     * since the snapshot
+     * 
+     * @param scanChangeListener
+     *            the listener
+     */
+    public void setScanChangeListener(ScanChangeListener scanChangeListener)
+    {
+        this.scanChangeListener = scanChangeListener;
+    }
+
+    public boolean isContinuous()
+    {
+        return continuous;
+    }
+
+    /**
+     * Continuous mode : once the initial walk is over, the walked folders are
+     * watched, and files created or modified there are fed to the iterator
+     * until {@link #interruptParsing()} is called. Requires async mode.
+     * 
+     * @param continuous
+     *            true to keep watching folders after the initial walk
+     */
+    public void setContinuous(boolean continuous)
+    {
+        this.continuous = continuous;
+    }
+
+    public boolean isOrderedOutput()
+    {
+        return orderedOutput;
+    }
+
+    /**
+     * Folders are walked by concurrent tasks : files only come in a
+     * meaningful order in ordered mode
+     */
+    @Override
+    protected boolean isOrderedIteration()
+    {
+        return isOrderedOutput();
+    }
+
+    /**
+     * Ordered mode : files are emitted in tree order, the children of a
+     * folder being walked by name (a folder's files come before the files of
+     * a following sibling, whatever their names). Output is then the same from
+     * one scan to the next, so that a consumer may checkpoint its progress by
+     * the last path processed. Folders are still listed in parallel by the
+     * executor, ahead of the emitting thread ; the work-stealing scheduler is
+     * not used.
+     * 
+     * @param orderedOutput
+     *            true to emit files in tree order
+     */
+    public void setOrderedOutput(boolean orderedOutput)
+    {
+        this.orderedOutput = orderedOutput;
+    }
+
+    public int getOrderedPrefetchLimit()
+    {
+        return orderedPrefetchLimit;
+    }
+
+    /**
+     * In ordered mode, set how many folders may be listed ahead of the
+     * emitting thread, which bounds the listings held waiting to be emitted
+     * 
+     * @param orderedPrefetchLimit
+     *            the number of folders, 0 to list folders only when reached
+     */
+    public void setOrderedPrefetchLimit(int orderedPrefetchLimit)
+    {
+        this.orderedPrefetchLimit = orderedPrefetchLimit;
+    }
+
+    public Map<String, Integer> getFileStoreConcurrency()
+    {
+        return fileStoreConcurrency;
+    }
+
+    /**
+     * Limit the number of folders walked at the same time on some file
+     * stores, for instance to spare a slow network share while walking local
+     * disks with more threads. A folder is accounted to the file store of the
+     * filter root it is walked from. Folders are listed in the current thread
+     * rather than spawned once the limit is reached, so that
+     * {@link #getCorePoolSize()} should be about the sum of the limits.
+     * 
+     * @param fileStoreConcurrency
+     *            the limit, by any path on the file store
+     */
+    public void setFileStoreConcurrency(Map<String, Integer> fileStoreConcurrency)
+    {
+        this.fileStoreConcurrency = fileStoreConcurrency;
+    }
+
+    public int getDefaultFileStoreConcurrency()
+    {
+        return defaultFileStoreConcurrency;
+    }
+
+    /**
+     * @param defaultFileStoreConcurrency
+     *            the limit of file stores not set by
+     *            {@link #setFileStoreConcurrency(Map)}, 0 for no limit
+     */
+    public void setDefaultFileStoreConcurrency(int defaultFileStoreConcurrency)
+    {
+        this.defaultFileStoreConcurrency = defaultFileStoreConcurrency;
+    }
+
+    public int getPartitionIndex()
+    {
+        return partitionIndex;
+    }
+
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Partitioned mode : scanners given the same filters and partition count,
+     * and each a different partition index, emit disjoint shares of the
+     * files, together emitting each file once, without coordination. The
+     * folders at {@link #getPartitionDepth()} below the roots, and the files
+     * above, are spread by hashing their path relative to their root ; upper
+     * folders are listed by all partitions.
+     * 
+     * @param partitionIndex
+     *            the partition of this scanner, from 0 to partitionCount - 1
+     * @param partitionCount
+     *            the number of partitions, 1 to disable partitioning
+     */
+    public void setPartition(int partitionIndex, int partitionCount)
+    {
+        this.partitionIndex = partitionIndex;
+        this.partitionCount = partitionCount;
+    }
+
+    public int getPartitionDepth()
+    {
+        return partitionDepth;
+    }
+
+    /**
+     * @param partitionDepth
+     *            the depth below the roots of the folders spread among
+     *            partitions (default 1) : deeper when the first levels hold
+     *            too few folders to balance partitions
+     */
+    public void setPartitionDepth(int partitionDepth)
+    {
+        this.partitionDepth = partitionDepth;
+    }
+
+    public File getCheckpointFile()
+    {
+        return checkpointFile;
+    }
+
+    /**
+     * Checkpoint mode : the folders left to list, and the last file emitted
+     * from folders being listed, are written to a file every
+     * {@link #getCheckpointInterval()}. A scan finding this file resumes from
+     * it instead of starting over, and the file is deleted once a scan is
+     * complete. Folders are then listed in name order. Files emitted right
+     * before a checkpoint may be emitted again on resume, and files still
+     * queued in the iterator when the process stopped are not emitted again :
+     * bound them with {@link #setQueueLimit(int)}. Not supported with
+     * incremental or ordered scans.
+     * 
+     * @param checkpointFile
+     *            the checkpoint file, null to disable checkpoints
+     */
+    public void setCheckpointFile(File checkpointFile)
+    {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public long getCheckpointInterval()
+    {
+        return checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval
+     *            the minimum delay between two checkpoints, in milliseconds
+     */
+    public void setCheckpointInterval(long checkpointInterval)
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public long getTargetListingLatency()
+    {
+        return targetListingLatency;
+    }
+
+    /**
+     * Adaptive throttling, for scans against shared storage : when folder
+     * listings take longer than this target, the number of folders listed at
+     * the same time is halved, then listings are spaced out ; once listings
+     * are faster again, both ramp back up progressively.
+     * 
+     * @param targetListingLatency
+     *            the target latency of a folder listing, in milliseconds, 0
+     *            to disable throttling
+     */
+    public void setTargetListingLatency(long targetListingLatency)
+    {
+        this.targetListingLatency = targetListingLatency;
+    }
+
+    public int getMaxListingConcurrency()
+    {
+        return maxListingConcurrency;
+    }
+
+    /**
+     * @param maxListingConcurrency
+     *            the number of folders listed at the same time when latency
+     *            is on target, 0 for {@link #getCorePoolSize()} + 1
+     */
+    public void setMaxListingConcurrency(int maxListingConcurrency)
+    {
+        this.maxListingConcurrency = maxListingConcurrency;
+    }
+
+    ListingThrottle getListingThrottle()
+    {
+        return listingThrottle;
+    }
+
+    ScanMetrics getScanMetrics()
+    {
+        return scanMetrics;
+    }
+
+    /**
+     * @return the peak number of folders walked at the same time on each
+     *         limited file store, for the current scan
+     */
+    Map<String, Integer> getFileStorePeakConcurrency()
+    {
+        Map<String, Integer> peaks = new HashMap<String, Integer>();
+        synchronized (fileStorePermits)
+        {
+            for (Map.Entry<FileStore, StorePermits> entry : fileStorePermits.entrySet())
+            {
+                peaks.put(entry.getKey().toString(), entry.getValue().getPeak());
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Stats part
+     */
+
+    public final class DirectoryScannerStats extends MBeanObject
+    {
+        protected DirectoryScannerStats(String name)
+        {
+            super(name);
+        }
+
+        public long getFoldersListed()
+        {
+            return scanMetrics.getFoldersListed();
+        }
+
+        public long getEntriesListed()
+        {
+            return scanMetrics.getEntriesListed();
+        }
+
+        public long getFilesMatched()
+        {
+            return scanMetrics.getFilesMatched();
+        }
+
+        public double getFoldersPerSecond()
+        {
+            return scanMetrics.getFoldersPerSecond();
+        }
+
+        public double getEntriesPerSecond()
+        {
+            return scanMetrics.getEntriesPerSecond();
+        }
+
+        public double getMatchedPerSecond()
+        {
+            return scanMetrics.getMatchedPerSecond();
+        }
+
+        public double getListingLatencyP50Millis()
+        {
+            return scanMetrics.getListingLatencyMillis(50);
+        }
+
+        public double getListingLatencyP99Millis()
+        {
+            return scanMetrics.getListingLatencyMillis(99);
+        }
+
+        public double getListingLatencyMaxMillis()
+        {
+            return scanMetrics.getMaxListingLatencyMillis();
+        }
+
+        public String[] getSlowestFolders()
+        {
+            return scanMetrics.getSlowestFolders();
+        }
+
+        public long getForkedTasks()
+        {
+            return scanMetrics.getForkedTasks();
+        }
+
+        public long getInlinedTasks()
+        {
+            return scanMetrics.getInlinedTasks();
+        }
+
+        public double getForkRatio()
+        {
+            return scanMetrics.getForkRatio();
+        }
+
+        public long getElapsedMillis()
+        {
+            return scanMetrics.getElapsedMillis();
+        }
+
+        public int getListingConcurrency()
+        {
+            ListingThrottle throttle = listingThrottle;
+            return throttle != null ? throttle.getConcurrency() : 0;
+        }
+
+        public double getListingDelayMillis()
+        {
+            ListingThrottle throttle = listingThrottle;
+            return throttle != null ? throttle.getDelayMillis() : 0;
+        }
+    }
+
+    private final DirectoryScannerStats directoryScannerStats = new DirectoryScannerStats(this.getClass().getName()
+            + "Stats");
+}
@@ -0,0 +1,82 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.arondor.common.io.RandomAccessZipEntry;
+
+/**
+ * Access to the content of archive entries emitted by a scanner walking
+ * archives (see {@link AbstractDirectoryScanner#setScanArchives(boolean)}).
+ */
+public final class ArchiveEntries
+{
+    private ArchiveEntries()
+    {
+    }
+
+    /**
+     * Open an archive entry, without extracting it
+     * 
+     * @param path
+     *            the path emitted by the scanner : the path of the archive
+     *            followed by the path of the entry in the archive
+     * @return the entry, to be closed once read
+     */
+    public static RandomAccessZipEntry open(String path) throws IOException
+    {
+        File file = new File(path);
+        String entryPath = null;
+        for (File archive = file; archive != null; archive = archive.getParentFile())
+        {
+            if (archive.isFile())
+            {
+                if (entryPath == null)
+                {
+                    break;
+                }
+                return open(archive, entryPath);
+            }
+            entryPath = entryPath == null ? archive.getName() : archive.getName() + "/" + entryPath;
+        }
+        throw new FileNotFoundException("Not an archive entry : " + path);
+    }
+
+    private static RandomAccessZipEntry open(File archive, String entryPath) throws IOException
+    {
+        ZipFile zipFile = new ZipFile(archive);
+        try
+        {
+            ZipEntry entry = zipFile.getEntry(entryPath);
+            if (entry == null)
+            {
+                /*
+                 * The entry name may not be normalized in the archive
+                 */
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entry == null && entries.hasMoreElements())
+                {
+                    ZipEntry candidate = entries.nextElement();
+                    if (!candidate.isDirectory() && entryPath.equals(ArchiveLister.normalize(candidate.getName())))
+                    {
+                        entry = candidate;
+                    }
+                }
+            }
+            if (entry == null || entry.isDirectory())
+            {
+                throw new FileNotFoundException("No entry " + entryPath + " in " + archive.getAbsolutePath());
+            }
+            return new RandomAccessZipEntry(zipFile, entry, true);
+        }
+        catch (IOException e)
+        {
+            zipFile.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+
+/**
+ * A folder or file inside an archive, as walked by {@link ArchiveLister}.
+ * 
+ * Its path is the path of the archive followed by the path of the entry, so
+ * that globs match archive entries as if the archive were a folder.
+ */
+final class ArchiveFile extends File
+{
+    private static final long serialVersionUID = 1L;
+
+    private final File archive;
+
+    private final String entryPath;
+
+    /**
+     * @param archive
+     *            the archive file
+     * @param entryPath
+     *            the path of the entry in the archive, '/' separated, empty
+     *            for the archive root
+     */
+    ArchiveFile(File archive, String entryPath)
+    {
+        super(entryPath.isEmpty() ? archive.getPath() : archive.getPath() + File.separator
+                + entryPath.replace('/', File.separatorChar));
+        this.archive = archive;
+        this.entryPath = entryPath;
+    }
+
+    File getArchive()
+    {
+        return archive;
+    }
+
+    String getEntryPath()
+    {
+        return entryPath;
+    }
+}
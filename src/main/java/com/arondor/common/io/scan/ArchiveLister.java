@@ -0,0 +1,294 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Traversal engine decorator walking archives as folders.
+ * 
+ * Archive files found by the underlying lister are turned into folders. The
+ * entries of an archive are read once from its central directory, without
+ * reading their content, into an index of its folders ; the indexes of the
+ * last archives walked are kept while their folders are listed.
+ */
+final class ArchiveLister implements DirectoryLister
+{
+    private static final Logger LOGGER = Logger.getLogger(ArchiveLister.class);
+
+    private static final int INDEX_CACHE_SIZE = 16;
+
+    private static final Comparator<ScanEntry> NAME_COMPARATOR = new Comparator<ScanEntry>()
+    {
+        @Override
+        public int compare(ScanEntry o1, ScanEntry o2)
+        {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    /**
+     * A file of an archive
+     */
+    private static final class Entry
+    {
+        private final String path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        Entry(String path, long size, long lastModified)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * The entries of an archive, by folder
+     */
+    private static final class ArchiveIndex
+    {
+        private final Map<String, List<Entry>> files = new HashMap<String, List<Entry>>();
+
+        private final Map<String, Set<String>> folders = new HashMap<String, Set<String>>();
+
+        private final long lastModified;
+
+        ArchiveIndex(File archive) throws IOException
+        {
+            lastModified = archive.lastModified();
+            ZipFile zipFile = new ZipFile(archive);
+            try
+            {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements())
+                {
+                    ZipEntry entry = entries.nextElement();
+                    String path = normalize(entry.getName());
+                    if (path == null)
+                    {
+                        LOGGER.warn("Skipping invalid entry " + entry.getName() + " of " + archive.getAbsolutePath());
+                        continue;
+                    }
+                    if (path.isEmpty())
+                    {
+                        continue;
+                    }
+                    int slash = path.lastIndexOf('/');
+                    String parent = slash == -1 ? "" : path.substring(0, slash);
+                    if (entry.isDirectory())
+                    {
+                        addFolder(path);
+                        continue;
+                    }
+                    addFolder(parent);
+                    List<Entry> children = files.get(parent);
+                    if (children == null)
+                    {
+                        children = new ArrayList<Entry>();
+                        files.put(parent, children);
+                    }
+                    children.add(new Entry(path, entry.getSize(), entry.getTime()));
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("Invalid entry name in " + archive.getAbsolutePath(), e);
+            }
+            finally
+            {
+                zipFile.close();
+            }
+        }
+
+        /**
+         * Add a folder, and its parents
+         */
+        private void addFolder(String path)
+        {
+            if (folders.containsKey(path))
+            {
+                return;
+            }
+            folders.put(path, new HashSet<String>());
+            if (path.isEmpty())
+            {
+                return;
+            }
+            int slash = path.lastIndexOf('/');
+            String parent = slash == -1 ? "" : path.substring(0, slash);
+            addFolder(parent);
+            folders.get(parent).add(path.substring(slash + 1));
+        }
+    }
+
+    /**
+     * @return the path without leading, trailing or duplicate '/', or
+     *         null if it escapes the archive
+     */
+    static String normalize(String name)
+    {
+        StringBuilder path = new StringBuilder(name.length());
+        for (String segment : name.replace('\\', '/').split("/"))
+        {
+            if (segment.isEmpty() || segment.equals("."))
+            {
+                continue;
+            }
+            if (segment.equals(".."))
+            {
+                return null;
+            }
+            if (path.length() > 0)
+            {
+                path.append('/');
+            }
+            path.append(segment);
+        }
+        return path.toString();
+    }
+
+    private final DirectoryLister lister;
+
+    private final ExtensionSet archiveExtensions;
+
+    private final Map<File, ArchiveIndex> indexes = new LinkedHashMap<File, ArchiveIndex>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, ArchiveIndex> eldest)
+        {
+            return size() > INDEX_CACHE_SIZE;
+        }
+    };
+
+    ArchiveLister(DirectoryLister lister, ExtensionSet archiveExtensions)
+    {
+        this.lister = lister;
+        this.archiveExtensions = archiveExtensions;
+    }
+
+    @Override
+    public void listChildren(File folder, boolean sorted, final EntryVisitor visitor)
+    {
+        ArchiveFile archiveFolder = folder instanceof ArchiveFile ? (ArchiveFile) folder : resolve(folder);
+        if (archiveFolder != null)
+        {
+            listArchiveFolder(archiveFolder, sorted, visitor);
+            return;
+        }
+        lister.listChildren(folder, sorted, new EntryVisitor()
+        {
+            @Override
+            public void visit(ScanEntry entry)
+            {
+                if (archiveExtensions.containsExtensionOf(entry.getName()) && !entry.isDirectory())
+                {
+                    entry.readAttributes();
+                    visitor.visit(new ScanEntry(new ArchiveFile(entry.getFile(), ""), true, entry.getSize(), entry
+                            .getLastModified()));
+                    return;
+                }
+                visitor.visit(entry);
+            }
+        });
+    }
+
+    /**
+     * Find the archive of a folder given as a plain file, as when resuming
+     * from a checkpoint
+     * 
+     * @return the folder in its archive, or null if not in an archive
+     */
+    private ArchiveFile resolve(File folder)
+    {
+        String entryPath = "";
+        for (File archive = folder; archive != null; archive = archive.getParentFile())
+        {
+            if (archiveExtensions.containsExtensionOf(archive.getName()) && archive.isFile())
+            {
+                return new ArchiveFile(archive, entryPath);
+            }
+            entryPath = entryPath.isEmpty() ? archive.getName() : archive.getName() + "/" + entryPath;
+        }
+        return null;
+    }
+
+    private ArchiveIndex getIndex(File archive) throws IOException
+    {
+        synchronized (indexes)
+        {
+            ArchiveIndex index = indexes.get(archive);
+            if (index != null && index.lastModified == archive.lastModified())
+            {
+                return index;
+            }
+        }
+        ArchiveIndex index = new ArchiveIndex(archive);
+        synchronized (indexes)
+        {
+            indexes.put(archive, index);
+        }
+        return index;
+    }
+
+    private void listArchiveFolder(ArchiveFile folder, boolean sorted, EntryVisitor visitor)
+    {
+        ArchiveIndex index;
+        try
+        {
+            index = getIndex(folder.getArchive());
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not read archive : " + folder.getArchive().getAbsolutePath(), e);
+            return;
+        }
+        String path = folder.getEntryPath();
+        String prefix = path.isEmpty() ? "" : path + "/";
+        List<ScanEntry> entries = new ArrayList<ScanEntry>();
+        Set<String> subfolders = index.folders.get(path);
+        if (subfolders != null)
+        {
+            for (String name : subfolders)
+            {
+                entries.add(new ScanEntry(new ArchiveFile(folder.getArchive(), prefix + name), true, 0,
+                        index.lastModified));
+            }
+        }
+        List<Entry> files = index.files.get(path);
+        if (files != null)
+        {
+            for (Entry entry : files)
+            {
+                entries.add(new ScanEntry(new ArchiveFile(folder.getArchive(), entry.path), false, entry.size,
+                        entry.lastModified));
+            }
+        }
+        if (sorted)
+        {
+            Collections.sort(entries, NAME_COMPARATOR);
+        }
+        for (ScanEntry entry : entries)
+        {
+            visitor.visit(entry);
+        }
+    }
+}
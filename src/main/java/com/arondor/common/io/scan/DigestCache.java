@@ -0,0 +1,159 @@
+package com.arondor.common.io.scan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Digests of a previous {@link FileDigester} run, by path, reused for files
+ * whose size and modification time are unchanged.
+ * 
+ * The cache is rewritten with the digests of the current run only, dropping
+ * files no longer found.
+ */
+final class DigestCache
+{
+    private static final Logger LOGGER = Logger.getLogger(DigestCache.class);
+
+    private static final int MAGIC = 0x41444743;
+
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    private final String algorithm;
+
+    private final Map<String, FileDigest> previous;
+
+    private final Map<String, FileDigest> current = new ConcurrentHashMap<String, FileDigest>();
+
+    private DigestCache(File file, String algorithm, Map<String, FileDigest> previous)
+    {
+        this.file = file;
+        this.algorithm = algorithm;
+        this.previous = previous;
+    }
+
+    /**
+     * @return an empty cache, written to a file
+     */
+    static DigestCache empty(File file, String algorithm)
+    {
+        return new DigestCache(file, algorithm, new HashMap<String, FileDigest>());
+    }
+
+    /**
+     * Open a cache, empty if the file does not exist or was written for
+     * another algorithm
+     */
+    static DigestCache open(File file, String algorithm) throws IOException
+    {
+        Map<String, FileDigest> previous = new HashMap<String, FileDigest>();
+        if (!file.exists())
+        {
+            return new DigestCache(file, algorithm, previous);
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try
+        {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                throw new IOException("Invalid digest cache " + file.getAbsolutePath());
+            }
+            String cacheAlgorithm = input.readUTF();
+            if (!cacheAlgorithm.equals(algorithm))
+            {
+                LOGGER.warn("Digest cache " + file.getAbsolutePath() + " was written for " + cacheAlgorithm
+                        + ", ignoring it");
+                return new DigestCache(file, algorithm, previous);
+            }
+            int count = input.readInt();
+            for (int idx = 0; idx < count; idx++)
+            {
+                String path = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                byte[] digest = new byte[input.readUnsignedByte()];
+                input.readFully(digest);
+                previous.put(path, new FileDigest(path, size, lastModified, digest, true));
+            }
+            LOGGER.info("Opened digest cache " + file.getAbsolutePath() + ", files=" + count);
+            return new DigestCache(file, algorithm, previous);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the cached digest of a file, or null if unknown or changed
+     */
+    FileDigest get(String path, long size, long lastModified)
+    {
+        FileDigest digest = previous.get(path);
+        if (digest == null || digest.getSize() != size || digest.getLastModified() != lastModified)
+        {
+            return null;
+        }
+        current.put(path, digest);
+        return digest;
+    }
+
+    void put(FileDigest digest)
+    {
+        current.put(digest.getPath(), digest);
+    }
+
+    /**
+     * Write the digests of the current run
+     */
+    void write() throws IOException
+    {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile),
+                65536));
+        try
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(algorithm);
+            output.writeInt(current.size());
+            for (FileDigest digest : current.values())
+            {
+                output.writeUTF(digest.getPath());
+                output.writeLong(digest.getSize());
+                output.writeLong(digest.getLastModified());
+                output.writeByte(digest.getDigestBytes().length);
+                output.write(digest.getDigestBytes());
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        try
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOGGER.info("Wrote digest cache " + file.getAbsolutePath() + ", files=" + current.size());
+    }
+}
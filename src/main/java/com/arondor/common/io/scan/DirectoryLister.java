@@ -0,0 +1,28 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+
+/**
+ * Traversal engine : lists the children of a folder
+ */
+interface DirectoryLister
+{
+    interface EntryVisitor
+    {
+        void visit(ScanEntry entry);
+    }
+
+    /**
+     * List the children of a folder
+     * 
+     * @param folder
+     *            the folder to list
+     * @param sorted
+     *            visit children sorted by name, in {@link String} order : the
+     *            order of their absolute paths, as sorted before traversal
+     *            engines were pluggable
+     * @param visitor
+     *            the visitor to call for each child
+     */
+    void listChildren(File folder, boolean sorted, EntryVisitor visitor);
+}
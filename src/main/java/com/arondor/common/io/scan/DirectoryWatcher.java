@@ -0,0 +1,318 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Watches the folders walked by a scan, and turns {@link WatchService} events
+ * into scan entries once the initial walk is over.
+ *
+ * Folders are registered before being listed, so that no file created during
+ * the walk is missed (it may be seen twice). When events were lost
+ * ({@link StandardWatchEventKinds#OVERFLOW}), the affected folder is listed
+ * again, and its files modified since it was last known consistent are
+ * emitted.
+ */
+class DirectoryWatcher
+{
+    private static final Logger LOGGER = Logger.getLogger(DirectoryWatcher.class);
+
+    interface Callback
+    {
+        /**
+         * A file matching the glob was created, modified or deleted
+         */
+        void fileChanged(ScanEntry entry);
+
+        /**
+         * A folder that may hold matching files was created : walk it
+         */
+        void folderCreated(File folder, GlobPattern glob, long state);
+
+        boolean isInterrupted();
+    }
+
+    private final WatchService watchService;
+
+    private final Map<WatchKey, WatchedFolder> watchedFolders = new ConcurrentHashMap<WatchKey, WatchedFolder>();
+
+    private final Map<Path, WatchedFolder> watchedPaths = new ConcurrentHashMap<Path, WatchedFolder>();
+
+    private final DirectoryLister lister;
+
+    private final Callback callback;
+
+    private int pollDelay = 1000;
+
+    DirectoryWatcher(DirectoryLister lister, Callback callback) throws IOException
+    {
+        this.lister = lister;
+        this.callback = callback;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Start watching a folder
+     *
+     * @param folder
+     *            the folder, about to be listed
+     * @param glob
+     *            the glob the folder is walked with
+     * @param state
+     *            the state of the folder in the glob
+     */
+    void register(File folder, GlobPattern glob, long state)
+    {
+        Path path = folder.toPath();
+        long since = System.currentTimeMillis();
+        try
+        {
+            WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            synchronized (watchedFolders)
+            {
+                WatchedFolder watchedFolder = watchedFolders.get(key);
+                if (watchedFolder == null)
+                {
+                    watchedFolder = new WatchedFolder(path, since);
+                    watchedFolders.put(key, watchedFolder);
+                    watchedPaths.put(path, watchedFolder);
+                }
+                watchedFolder.add(glob, state);
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not watch folder " + path + " : " + e.getMessage());
+        }
+    }
+
+    int getWatchedFolderCount()
+    {
+        return watchedFolders.size();
+    }
+
+    /**
+     * Process events until the callback is interrupted
+     */
+    void watch()
+    {
+        LOGGER.info("Watching " + watchedFolders.size() + " folders");
+        while (!callback.isInterrupted())
+        {
+            WatchKey key;
+            try
+            {
+                key = watchService.poll(pollDelay, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                LOGGER.error("Interrupted while watching folders", e);
+                return;
+            }
+            catch (ClosedWatchServiceException e)
+            {
+                return;
+            }
+            if (key == null)
+            {
+                continue;
+            }
+            WatchedFolder watchedFolder = watchedFolders.get(key);
+            if (watchedFolder == null)
+            {
+                key.cancel();
+                continue;
+            }
+            processEvents(watchedFolder, key.pollEvents());
+            if (!key.reset())
+            {
+                watchedFolders.remove(key);
+                watchedPaths.remove(watchedFolder.path);
+            }
+        }
+    }
+
+    private void processEvents(WatchedFolder watchedFolder, List<WatchEvent<?>> events)
+    {
+        /*
+         * Coalesce the events of a same child : a single write often brings
+         * several modifications
+         */
+        Map<Path, WatchEvent.Kind<?>> children = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+        for (WatchEvent<?> event : events)
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                relist(watchedFolder);
+                children.clear();
+                break;
+            }
+            Path child = watchedFolder.path.resolve((Path) event.context());
+            WatchEvent.Kind<?> previous = children.get(child);
+            if (previous != StandardWatchEventKinds.ENTRY_CREATE || event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+            {
+                children.put(child, event.kind());
+            }
+        }
+        for (Map.Entry<Path, WatchEvent.Kind<?>> child : children.entrySet())
+        {
+            processEvent(watchedFolder, child.getKey(), child.getValue());
+        }
+    }
+
+    private void processEvent(WatchedFolder watchedFolder, Path path, WatchEvent.Kind<?> kind)
+    {
+        String name = path.getFileName().toString();
+        File file = path.toFile();
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE)
+        {
+            for (int idx = 0; idx < watchedFolder.size(); idx++)
+            {
+                GlobPattern glob = watchedFolder.getGlob(idx);
+                if (glob.matches(glob.step(watchedFolder.getState(idx), name)))
+                {
+                    ScanEntry entry = new ScanEntry(file, false, -1, -1);
+                    entry.setChange(ScanChange.REMOVED);
+                    callback.fileChanged(entry);
+                    return;
+                }
+            }
+            return;
+        }
+        ScanEntry entry = new ScanEntry(file);
+        if (!entry.readAttributes())
+        {
+            return;
+        }
+        entry.setChange(kind == StandardWatchEventKinds.ENTRY_CREATE ? ScanChange.ADDED : ScanChange.MODIFIED);
+        visit(watchedFolder, entry, kind == StandardWatchEventKinds.ENTRY_CREATE, Long.MIN_VALUE);
+    }
+
+    private void visit(WatchedFolder watchedFolder, ScanEntry entry, boolean walkFolders, long since)
+    {
+        for (int idx = 0; idx < watchedFolder.size(); idx++)
+        {
+            GlobPattern glob = watchedFolder.getGlob(idx);
+            long state = glob.step(watchedFolder.getState(idx), entry.getName());
+            if (state == GlobPattern.DEAD_STATE)
+            {
+                continue;
+            }
+            if (entry.isDirectory())
+            {
+                if (walkFolders && glob.canDescend(state))
+                {
+                    callback.folderCreated(entry.getFile(), glob, state);
+                }
+            }
+            else if (glob.matches(state) && entry.getLastModified() >= since)
+            {
+                callback.fileChanged(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Events were lost : list the folder again
+     */
+    private void relist(final WatchedFolder watchedFolder)
+    {
+        final long since = watchedFolder.since;
+        watchedFolder.since = System.currentTimeMillis();
+        LOGGER.warn("Events lost for folder " + watchedFolder.path + ", listing it again");
+        lister.listChildren(watchedFolder.path.toFile(), false, new DirectoryLister.EntryVisitor()
+        {
+            @Override
+            public void visit(ScanEntry child)
+            {
+                if (!child.readAttributes())
+                {
+                    return;
+                }
+                boolean watched = watchedPaths.containsKey(child.getFile().toPath());
+                child.setChange(ScanChange.MODIFIED);
+                DirectoryWatcher.this.visit(watchedFolder, child, !watched, since);
+            }
+        });
+    }
+
+    void close()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not close watch service", e);
+        }
+    }
+
+    public int getPollDelay()
+    {
+        return pollDelay;
+    }
+
+    public void setPollDelay(int pollDelay)
+    {
+        this.pollDelay = pollDelay;
+    }
+
+    private static final class WatchedFolder
+    {
+        private final Path path;
+
+        private final List<GlobPattern> globs = new ArrayList<GlobPattern>(1);
+
+        private final List<Long> states = new ArrayList<Long>(1);
+
+        /**
+         * Time since which the folder is known to be consistent
+         */
+        private volatile long since;
+
+        private WatchedFolder(Path path, long since)
+        {
+            this.path = path;
+            this.since = since;
+        }
+
+        private synchronized void add(GlobPattern glob, long state)
+        {
+            globs.add(glob);
+            states.add(state);
+        }
+
+        private synchronized int size()
+        {
+            return globs.size();
+        }
+
+        private synchronized GlobPattern getGlob(int idx)
+        {
+            return globs.get(idx);
+        }
+
+        private synchronized long getState(int idx)
+        {
+            return states.get(idx);
+        }
+    }
+}
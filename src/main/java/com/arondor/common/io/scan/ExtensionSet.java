@@ -0,0 +1,84 @@
+package com.arondor.common.io.scan;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Case-insensitive set of file extensions, looked up from a file name without
+ * extracting its extension : open addressing over a hash computed in place on
+ * the name.
+ */
+final class ExtensionSet
+{
+    private final String[] table;
+
+    private final int mask;
+
+    private final int size;
+
+    ExtensionSet(Collection<String> extensions)
+    {
+        int capacity = 2;
+        while (capacity < extensions.size() * 2)
+        {
+            capacity <<= 1;
+        }
+        table = new String[capacity];
+        mask = capacity - 1;
+        int count = 0;
+        for (String extension : extensions)
+        {
+            String lowerCase = extension.toLowerCase(Locale.ROOT);
+            int slot = hash(lowerCase, 0, lowerCase.length()) & mask;
+            while (table[slot] != null && !table[slot].equals(lowerCase))
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == null)
+            {
+                table[slot] = lowerCase;
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @param name
+     *            a file name
+     * @return true if the extension of the name, the part after its last '.'
+     *         or the empty string if none, is in the set
+     */
+    boolean containsExtensionOf(String name)
+    {
+        int dot = name.lastIndexOf('.');
+        int start = dot != -1 ? dot + 1 : name.length();
+        int length = name.length() - start;
+        int slot = hash(name, start, name.length()) & mask;
+        while (table[slot] != null)
+        {
+            String extension = table[slot];
+            if (extension.length() == length && name.regionMatches(true, start, extension, 0, length))
+            {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int hash(String value, int start, int end)
+    {
+        int hash = 0;
+        for (int idx = start; idx < end; idx++)
+        {
+            hash = 31 * hash + Character.toLowerCase(value.charAt(idx));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,24 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+
+/**
+ * Filter on the attributes of scanned files, evaluated during the traversal
+ * from the attributes read by the traversal engine when it provides them
+ * (see {@link TraversalEngine#NIO}).
+ * 
+ * @see FileAttributeFilters
+ */
+public interface FileAttributeFilter
+{
+    /**
+     * @param file
+     *            the file matching the scan filters
+     * @param size
+     *            its size in bytes
+     * @param lastModified
+     *            its last modification time in milliseconds
+     * @return true to emit the file
+     */
+    boolean accept(File file, long size, long lastModified);
+}
@@ -0,0 +1,204 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Common {@link FileAttributeFilter}s
+ */
+public final class FileAttributeFilters
+{
+    private FileAttributeFilters()
+    {
+    }
+
+    /**
+     * @return a filter accepting files of at least this size, in bytes
+     */
+    public static FileAttributeFilter minSize(final long minSize)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return size >= minSize;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "size>=" + minSize;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files of at most this size, in bytes
+     */
+    public static FileAttributeFilter maxSize(final long maxSize)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return size <= maxSize;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "size<=" + maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files modified at or after this time, in
+     *         milliseconds
+     */
+    public static FileAttributeFilter modifiedSince(final long time)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return lastModified >= time;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "lastModified>=" + time;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files modified before this time, in
+     *         milliseconds
+     */
+    public static FileAttributeFilter modifiedBefore(final long time)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return lastModified < time;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "lastModified<" + time;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files modified at most this long ago, in
+     *         milliseconds, the age being taken when the file is found
+     */
+    public static FileAttributeFilter maxAge(final long maxAge)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return System.currentTimeMillis() - lastModified <= maxAge;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "age<=" + maxAge;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files modified at least this long ago, in
+     *         milliseconds, the age being taken when the file is found
+     */
+    public static FileAttributeFilter minAge(final long minAge)
+    {
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                return System.currentTimeMillis() - lastModified >= minAge;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "age>=" + minAge;
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files accepted by all filters
+     */
+    public static FileAttributeFilter and(FileAttributeFilter... filters)
+    {
+        final List<FileAttributeFilter> all = new ArrayList<FileAttributeFilter>(Arrays.asList(filters));
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                for (FileAttributeFilter filter : all)
+                {
+                    if (!filter.accept(file, size, lastModified))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public String toString()
+            {
+                return all.toString();
+            }
+        };
+    }
+
+    /**
+     * @return a filter accepting files accepted by any filter
+     */
+    public static FileAttributeFilter or(FileAttributeFilter... filters)
+    {
+        final List<FileAttributeFilter> any = new ArrayList<FileAttributeFilter>(Arrays.asList(filters));
+        return new FileAttributeFilter()
+        {
+            @Override
+            public boolean accept(File file, long size, long lastModified)
+            {
+                for (FileAttributeFilter filter : any)
+                {
+                    if (filter.accept(file, size, lastModified))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public String toString()
+            {
+                return "any" + any;
+            }
+        };
+    }
+}
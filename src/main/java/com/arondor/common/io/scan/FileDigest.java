@@ -0,0 +1,92 @@
+package com.arondor.common.io.scan;
+
+/**
+ * The digest of a file, computed by a {@link FileDigester}
+ */
+public final class FileDigest
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String path;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final byte[] digest;
+
+    private final boolean cached;
+
+    public FileDigest(String path, long size, long lastModified, byte[] digest, boolean cached)
+    {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.digest = digest;
+        this.cached = cached;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return the size in bytes, when the digest was computed
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the last modification time in milliseconds, when the digest
+     *         was computed
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    public byte[] getDigest()
+    {
+        return digest.clone();
+    }
+
+    /**
+     * @return the digest in lower case hexadecimal
+     */
+    public String getHexDigest()
+    {
+        char[] hex = new char[digest.length * 2];
+        for (int idx = 0; idx < digest.length; idx++)
+        {
+            hex[idx * 2] = HEX[(digest[idx] >> 4) & 0xf];
+            hex[idx * 2 + 1] = HEX[digest[idx] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @return true if the digest was taken from the cache, the file size and
+     *         modification time being unchanged
+     */
+    public boolean isCached()
+    {
+        return cached;
+    }
+
+    byte[] getDigestBytes()
+    {
+        return digest;
+    }
+
+    /**
+     * @return the digest and path, as written by sha256sum
+     */
+    @Override
+    public String toString()
+    {
+        return getHexDigest() + "  " + path;
+    }
+}
@@ -0,0 +1,457 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import com.arondor.common.io.AsyncIterator;
+import com.arondor.common.io.ConfigurableThreadPoolExecutor;
+
+/**
+ * Computes the digest of the files of a {@link FileScanner}, or any iterator
+ * of paths, in parallel.
+ *
+ * Files are read by a pool of threads through a direct buffer per thread, the
+ * bytes being read at the same time being bounded by
+ * {@link #setInFlightBytes(long)}. Digests are emitted as they are computed,
+ * in no particular order. With a cache file, files whose size and
+ * modification time are unchanged since the previous run are not read again.
+ */
+public class FileDigester extends AsyncIterator<FileDigest>
+{
+    private static final Logger LOGGER = Logger.getLogger(FileDigester.class);
+
+    /**
+     * Non-cryptographic checksum, much cheaper than SHA-256, for
+     * {@link #setAlgorithm(String)}
+     */
+    public static final String CRC32 = "CRC32";
+
+    private final Iterator<String> files;
+
+    private String algorithm = "SHA-256";
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private long inFlightBytes = 64L * 1024 * 1024;
+
+    private int readBufferSize = 1024 * 1024;
+
+    private File cacheFile;
+
+    /**
+     * Bytes being read, bounded by {@link #inFlightBytes}
+     */
+    private long bytesReading = 0;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong cachedFiles = new AtomicLong();
+
+    private final ThreadLocal<ByteBuffer> readBuffers = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect(readBufferSize);
+        }
+    };
+
+    /**
+     * CRC32 as a {@link MessageDigest}
+     */
+    private static final class CRC32Digest extends MessageDigest
+    {
+        private final CRC32 crc = new CRC32();
+
+        CRC32Digest()
+        {
+            super(CRC32);
+        }
+
+        @Override
+        protected void engineUpdate(byte input)
+        {
+            crc.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len)
+        {
+            crc.update(input, offset, len);
+        }
+
+        /**
+         * Direct buffers are read in place, instead of being copied to a
+         * temporary array
+         */
+        @Override
+        protected void engineUpdate(ByteBuffer input)
+        {
+            crc.update(input);
+        }
+
+        @Override
+        protected byte[] engineDigest()
+        {
+            long value = crc.getValue();
+            crc.reset();
+            return new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+        }
+
+        @Override
+        protected void engineReset()
+        {
+            crc.reset();
+        }
+    }
+
+    /**
+     * @param files
+     *            the paths of the files to digest, such as a
+     *            {@link FileScanner}
+     */
+    public FileDigester(Iterator<String> files)
+    {
+        this.files = files;
+    }
+
+    @Override
+    protected boolean doScanOneItem()
+    {
+        checkAlgorithm();
+        final DigestCache cache = openCache();
+        ScheduledThreadPoolExecutor pool = new ConfigurableThreadPoolExecutor("FileDigester_"
+                + System.currentTimeMillis(), Math.max(1, threads), Integer.MAX_VALUE);
+        /*
+         * Bound the paths pulled ahead of the readers
+         */
+        final Semaphore pending = new Semaphore(Math.max(1, threads) * 4);
+        long start = System.currentTimeMillis();
+        try
+        {
+            while (!isInterrupted() && files.hasNext())
+            {
+                final String path = files.next();
+                pending.acquireUninterruptibly();
+                pool.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            FileDigest digest = digest(path, cache);
+                            if (digest != null)
+                            {
+                                addObject(digest);
+                            }
+                        }
+                        finally
+                        {
+                            pending.release();
+                        }
+                    }
+                });
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+            try
+            {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                LOGGER.error("Interrupted while waiting for digests", e);
+            }
+        }
+        if (cache != null && !isInterrupted())
+        {
+            try
+            {
+                cache.write();
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Could not write digest cache " + cacheFile.getAbsolutePath(), e);
+            }
+        }
+        LOGGER.info("Digested files=" + getTotalObjectsAdded() + ", cached=" + cachedFiles.get() + ", bytes read="
+                + bytesRead.get() + " in " + (System.currentTimeMillis() - start) + "ms");
+        return false;
+    }
+
+    private DigestCache openCache()
+    {
+        if (cacheFile == null)
+        {
+            return null;
+        }
+        try
+        {
+            return DigestCache.open(cacheFile, algorithm);
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not read digest cache " + cacheFile.getAbsolutePath() + ", starting with an empty one : "
+                    + e);
+            return DigestCache.empty(cacheFile, algorithm);
+        }
+    }
+
+    /**
+     * Fail before reading any file if the algorithm is unknown
+     */
+    private void checkAlgorithm()
+    {
+        if (CRC32.equals(algorithm))
+        {
+            return;
+        }
+        try
+        {
+            MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Unknown digest algorithm " + algorithm, e);
+        }
+    }
+
+    /**
+     * Also interrupts the paths to digest when they come from an
+     * {@link AsyncIterator}, such as an async {@link FileScanner}, so that
+     * its producers do not stay blocked on its full queue
+     */
+    @Override
+    public void interruptParsing()
+    {
+        super.interruptParsing();
+        if (files instanceof AsyncIterator)
+        {
+            ((AsyncIterator<?>) files).interruptParsing();
+        }
+    }
+
+    private MessageDigest createDigest()
+    {
+        if (CRC32.equals(algorithm))
+        {
+            return new CRC32Digest();
+        }
+        try
+        {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException("Unknown digest algorithm " + algorithm, e);
+        }
+    }
+
+    /**
+     * @return the digest of a file, or null if it could not be read
+     */
+    private FileDigest digest(String path, DigestCache cache)
+    {
+        File file = new File(path);
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (cache != null)
+            {
+                FileDigest cached = cache.get(path, size, lastModified);
+                if (cached != null)
+                {
+                    cachedFiles.incrementAndGet();
+                    return cached;
+                }
+            }
+            long reserved = reserveBytes(size);
+            try
+            {
+                FileDigest digest = new FileDigest(path, size, lastModified, read(file), false);
+                if (cache != null)
+                {
+                    cache.put(digest);
+                }
+                return digest;
+            }
+            finally
+            {
+                releaseBytes(reserved);
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not digest " + path + " : " + e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] read(File file) throws IOException
+    {
+        MessageDigest digest = createDigest();
+        ByteBuffer buffer = readBuffers.get();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            while (true)
+            {
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read < 0)
+                {
+                    break;
+                }
+                buffer.flip();
+                digest.update(buffer);
+                bytesRead.addAndGet(read);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Wait until the file may be read : a file larger than the budget is read
+     * alone
+     *
+     * @return the bytes reserved
+     */
+    private synchronized long reserveBytes(long size)
+    {
+        long reserved = Math.min(Math.max(size, 1), inFlightBytes);
+        while (bytesReading > 0 && bytesReading + reserved > inFlightBytes)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        bytesReading += reserved;
+        return reserved;
+    }
+
+    private synchronized void releaseBytes(long reserved)
+    {
+        bytesReading -= reserved;
+        notifyAll();
+    }
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * @param algorithm
+     *            a {@link MessageDigest} algorithm, "SHA-256" by default, or
+     *            {@link #CRC32}
+     */
+    public void setAlgorithm(String algorithm)
+    {
+        this.algorithm = algorithm;
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * @param threads
+     *            the number of files read at the same time, the number of
+     *            processors by default
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    public long getInFlightBytes()
+    {
+        return inFlightBytes;
+    }
+
+    /**
+     * @param inFlightBytes
+     *            the total size of the files read at the same time, 64MB by
+     *            default : fewer large files are read at the same time than
+     *            small ones
+     */
+    public void setInFlightBytes(long inFlightBytes)
+    {
+        this.inFlightBytes = inFlightBytes;
+    }
+
+    public int getReadBufferSize()
+    {
+        return readBufferSize;
+    }
+
+    /**
+     * @param readBufferSize
+     *            the size of the direct buffer of each thread, 1MB by default
+     */
+    public void setReadBufferSize(int readBufferSize)
+    {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public File getCacheFile()
+    {
+        return cacheFile;
+    }
+
+    /**
+     * @param cacheFile
+     *            the file keeping digests between runs, null for no cache
+     */
+    public void setCacheFile(File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @return the bytes read by the current run
+     */
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return the files of the current run taken from the cache
+     */
+    public long getCachedFiles()
+    {
+        return cachedFiles.get();
+    }
+}
@@ -0,0 +1,48 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * {@link java.io.File#listFiles()} based traversal engine
+ */
+class FileDirectoryLister implements DirectoryLister
+{
+    private static final Logger LOGGER = Logger.getLogger(FileDirectoryLister.class);
+
+    @Override
+    public void listChildren(File folder, boolean sorted, final EntryVisitor visitor)
+    {
+        if (!sorted)
+        {
+            folder.listFiles(new FileFilter()
+            {
+                @Override
+                public boolean accept(File child)
+                {
+                    visitor.visit(new ScanEntry(child));
+                    return false;
+                }
+            });
+            return;
+        }
+        /*
+         * Sort names rather than files : comparing absolute paths would build
+         * two strings per comparison
+         */
+        String names[] = folder.list();
+        if (names == null)
+        {
+            LOGGER.error("Could not list folder : " + folder.getAbsolutePath());
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names)
+        {
+            visitor.visit(new ScanEntry(new File(folder, name)));
+        }
+    }
+}
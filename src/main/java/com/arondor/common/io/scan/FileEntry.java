@@ -0,0 +1,82 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+
+/**
+ * A scanned file, with the attributes read during the scan
+ */
+public final class FileEntry
+{
+    private final String path;
+
+    private final long size;
+
+    private final long lastModified;
+
+    private final Object fileKey;
+
+    private final ScanChange change;
+
+    public FileEntry(String path, long size, long lastModified, Object fileKey, ScanChange change)
+    {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.change = change;
+    }
+
+    /**
+     * @return the absolute path
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    public File getFile()
+    {
+        return new File(path);
+    }
+
+    /**
+     * @return the size in bytes, or -1 if unknown
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the last modification time in milliseconds, or -1 if unknown
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the file key (see
+     *         {@link java.nio.file.attribute.BasicFileAttributes#fileKey()}),
+     *         or null if not available, as for files served from a snapshot
+     */
+    public Object getFileKey()
+    {
+        return fileKey;
+    }
+
+    /**
+     * @return the change since the previous snapshot or the initial walk, or
+     *         null when not scanning incrementally or continuously
+     */
+    public ScanChange getChange()
+    {
+        return change;
+    }
+
+    @Override
+    public String toString()
+    {
+        return path;
+    }
+}
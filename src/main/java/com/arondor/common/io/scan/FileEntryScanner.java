@@ -0,0 +1,45 @@
+package com.arondor.common.io.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Directory scanner emitting a {@link FileEntry} for each matching file,
+ * carrying the attributes read by the traversal itself : consumers never have
+ * to stat a file again.
+ * 
+ * Uses the {@link TraversalEngine#NIO} engine by default, which reads the
+ * attributes along with the file type. With the {@link TraversalEngine#FILE}
+ * engine, attributes are read again for each matching file.
+ */
+public class FileEntryScanner extends AbstractDirectoryScanner<FileEntry>
+{
+    public FileEntryScanner()
+    {
+        setTraversalEngine(TraversalEngine.NIO);
+    }
+
+    @Override
+    FileEntry toObject(ScanEntry file)
+    {
+        file.readAttributes();
+        return new FileEntry(file.getAbsolutePath(), file.getSize(), file.getLastModified(), file.getFileKey(),
+                file.getChange());
+    }
+
+    @Override
+    boolean readsFileAttributes()
+    {
+        return true;
+    }
+
+    public List<FileEntry> getIncludedEntries()
+    {
+        List<FileEntry> list = new ArrayList<FileEntry>();
+        while (hasNext())
+        {
+            list.add(next());
+        }
+        return list;
+    }
+}
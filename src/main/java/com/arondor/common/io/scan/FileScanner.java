@@ -2,6 +2,10 @@ package com.arondor.common.io.scan;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Optimized File Scanner
@@ -18,4 +22,21 @@ public interface FileScanner extends Iterator<String>
     public boolean isAsync();
 
     public List<String> getIncludedFiles();
+
+    /**
+     * @return the files scanned, as a stream
+     */
+    public default Stream<String> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return the files scanned, as a parallel stream : scanners split it as
+     *         files are found
+     */
+    public default Stream<String> parallelStream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), true);
+    }
 }
@@ -0,0 +1,456 @@
+package com.arondor.common.io.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled folder glob : a list of path segments, each of them being a literal
+ * name, a name with '*' and '?' wildcards, or '**' for any number of folders.
+ * Several globs may be compiled together, the automaton then matching if any
+ * of them matches.
+ *
+ * The glob is run as an automaton over the path segments. A state is the set
+ * of segment positions reachable after the folders walked so far, stored as
+ * a bitmask in a long : walking the tree then needs neither regex nor
+ * allocation, and an empty state tells that no descendant can ever match, so
+ * that the folder can be pruned.
+ *
+ * As the former per-folder regex did, segments before the first '**' ignore
+ * case ; segments after it are case-sensitive. As the former recursive regex
+ * did, the first '**' matches zero or more folders, the following ones match
+ * at least one folder.
+ */
+final class GlobPattern
+{
+    /**
+     * Maximum number of positions (segments, plus one final position per
+     * glob), as positions are stored in a long
+     */
+    static final int MAX_POSITIONS = 64;
+
+    static final long DEAD_STATE = 0L;
+
+    private final String source;
+
+    /**
+     * Segment at each position, null for the final position of a glob
+     */
+    private final Segment[] segments;
+
+    private final long finalMask;
+
+    /**
+     * Positions of a '**' ending its glob : all descendants match
+     */
+    private final long trailingAnyPathMask;
+
+    private final long initialState;
+
+    private GlobPattern(String source, Segment[] segments, long initialMask)
+    {
+        this.source = source;
+        this.segments = segments;
+        long finals = 0L;
+        long trailing = 0L;
+        for (int idx = 0; idx < segments.length; idx++)
+        {
+            if (segments[idx] == null)
+            {
+                finals |= 1L << idx;
+            }
+            else if (segments[idx].kind == Kind.ANY_PATH && segments[idx + 1] == null)
+            {
+                trailing |= 1L << idx;
+            }
+        }
+        this.finalMask = finals;
+        this.trailingAnyPathMask = trailing;
+        this.initialState = closure(initialMask);
+    }
+
+    /**
+     * Compile a glob from its segments
+     *
+     * @param wildcards
+     *            the path segments
+     * @param startIdx
+     *            the first segment to compile
+     * @return the compiled glob
+     */
+    static GlobPattern compile(String[] wildcards, int startIdx)
+    {
+        List<String[]> globs = new ArrayList<String[]>(1);
+        globs.add(Arrays.copyOfRange(wildcards, startIdx, wildcards.length));
+        return compile(globs);
+    }
+
+    /**
+     * @param glob
+     *            the path segments of a glob
+     * @return the number of positions the glob takes in an automaton
+     */
+    static int getPositionCount(String[] glob)
+    {
+        return glob.length + 1;
+    }
+
+    /**
+     * Compile several globs into a single automaton, matching if any of them
+     * matches
+     *
+     * @param globs
+     *            the path segments of each glob
+     * @return the compiled globs
+     */
+    static GlobPattern compile(List<String[]> globs)
+    {
+        return compile(globs, new int[globs.size()]);
+    }
+
+    /**
+     * Compile several globs into a single automaton, matching if any of them
+     * matches
+     *
+     * @param globs
+     *            the path segments of each glob
+     * @param exactPrefixes
+     *            for each glob, the number of leading segments to match as
+     *            case-sensitive literals
+     * @return the compiled globs
+     */
+    static GlobPattern compile(List<String[]> globs, int[] exactPrefixes)
+    {
+        int count = 0;
+        for (String[] glob : globs)
+        {
+            count += getPositionCount(glob);
+        }
+        if (count > MAX_POSITIONS)
+        {
+            throw new IllegalArgumentException("Too many segments (" + count + " > " + MAX_POSITIONS + ") in "
+                    + globs.size() + " globs");
+        }
+        Segment[] segments = new Segment[count];
+        StringBuilder source = new StringBuilder();
+        long initialMask = 0L;
+        int position = 0;
+        for (int globIdx = 0; globIdx < globs.size(); globIdx++)
+        {
+            String[] glob = globs.get(globIdx);
+            if (source.length() > 0)
+            {
+                source.append(", ");
+            }
+            initialMask |= 1L << position;
+            boolean firstAnyPath = true;
+            for (int idx = 0; idx < glob.length; idx++)
+            {
+                String wildcard = glob[idx];
+                boolean exact = idx < exactPrefixes[globIdx];
+                segments[position++] = new Segment(wildcard, firstAnyPath && !exact, firstAnyPath);
+                if (wildcard.equals("**"))
+                {
+                    firstAnyPath = false;
+                }
+                if (idx > 0)
+                {
+                    source.append('/');
+                }
+                source.append(wildcard);
+            }
+            segments[position++] = null;
+        }
+        return new GlobPattern(source.toString(), segments, initialMask);
+    }
+
+    /**
+     * Compile path globs, such as '**&#47;.snapshot/**'
+     *
+     * @param patterns
+     *            the globs, '/' or '\\' separated
+     * @return the compiled globs
+     */
+    static GlobPattern compilePaths(List<String> patterns)
+    {
+        List<String[]> globs = new ArrayList<String[]>(patterns.size());
+        for (String pattern : patterns)
+        {
+            globs.add(splitPath(pattern));
+        }
+        return compile(globs);
+    }
+
+    /**
+     * Split a path into its segments, ignoring empty ones
+     */
+    static String[] splitPath(String path)
+    {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.replace('\\', '/').split("/"))
+        {
+            if (!segment.isEmpty())
+            {
+                segments.add(segment);
+            }
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    /**
+     * @return the state before any folder has been walked
+     */
+    long getInitialState()
+    {
+        return initialState;
+    }
+
+    /**
+     * Walk one path segment
+     *
+     * @param state
+     *            the state of the parent folder
+     * @param name
+     *            the name of the child
+     * @return the state of the child, {@link #DEAD_STATE} if neither the child
+     *         nor any of its descendants can match
+     */
+    long step(long state, String name)
+    {
+        long next = 0L;
+        for (int idx = 0; idx < segments.length; idx++)
+        {
+            long bit = 1L << idx;
+            if ((state & bit) == 0)
+            {
+                continue;
+            }
+            Segment segment = segments[idx];
+            if (segment == null)
+            {
+                continue;
+            }
+            if (segment.kind == Kind.ANY_PATH)
+            {
+                next |= bit | (bit << 1);
+            }
+            else if (segment.matches(name))
+            {
+                next |= bit << 1;
+            }
+        }
+        return closure(next);
+    }
+
+    /**
+     * Walk several path segments
+     */
+    long step(long state, String[] names)
+    {
+        for (String name : names)
+        {
+            if (state == DEAD_STATE)
+            {
+                break;
+            }
+            state = step(state, name);
+        }
+        return state;
+    }
+
+    /**
+     * @return true if a file with this state matches the glob
+     */
+    boolean matches(long state)
+    {
+        return (state & finalMask) != 0;
+    }
+
+    /**
+     * @return true if some descendant of a folder with this state may match
+     *         the glob
+     */
+    boolean canDescend(long state)
+    {
+        return (state & ~finalMask) != 0;
+    }
+
+    /**
+     * @return true if all descendants of a folder with this state match the
+     *         glob
+     */
+    boolean matchesAllDescendants(long state)
+    {
+        return (state & trailingAnyPathMask) != 0;
+    }
+
+    /**
+     * When a '**' matching zero folders is reached, the next position is
+     * reached as well
+     */
+    private long closure(long state)
+    {
+        for (int idx = 0; idx < segments.length; idx++)
+        {
+            Segment segment = segments[idx];
+            if (segment != null && segment.kind == Kind.ANY_PATH && segment.allowEmpty && (state & (1L << idx)) != 0)
+            {
+                state |= 1L << (idx + 1);
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public String toString()
+    {
+        return source;
+    }
+
+    private enum Kind
+    {
+        LITERAL, PREFIX, SUFFIX, ANY, WILDCARD, ANY_PATH
+    }
+
+    /**
+     * One segment, with allocation-free fast paths for the common shapes :
+     * 'name', 'prefix*', '*.ext' and '*'
+     */
+    private static final class Segment
+    {
+        private final String pattern;
+
+        private final boolean ignoreCase;
+
+        private final boolean allowEmpty;
+
+        private final Kind kind;
+
+        private final String fixed;
+
+        private Segment(String pattern, boolean ignoreCase, boolean allowEmpty)
+        {
+            this.pattern = pattern;
+            this.ignoreCase = ignoreCase;
+            this.allowEmpty = allowEmpty;
+            int stars = 0;
+            boolean questionMark = false;
+            for (int idx = 0; idx < pattern.length(); idx++)
+            {
+                char c = pattern.charAt(idx);
+                if (c == '*')
+                {
+                    stars++;
+                }
+                else if (c == '?')
+                {
+                    questionMark = true;
+                }
+            }
+            if (pattern.equals("**"))
+            {
+                kind = Kind.ANY_PATH;
+                fixed = null;
+            }
+            else if (stars == 0 && !questionMark)
+            {
+                kind = Kind.LITERAL;
+                fixed = pattern;
+            }
+            else if (pattern.equals("*"))
+            {
+                kind = Kind.ANY;
+                fixed = null;
+            }
+            else if (stars == 1 && !questionMark && pattern.charAt(pattern.length() - 1) == '*')
+            {
+                kind = Kind.PREFIX;
+                fixed = pattern.substring(0, pattern.length() - 1);
+            }
+            else if (stars == 1 && !questionMark && pattern.charAt(0) == '*')
+            {
+                kind = Kind.SUFFIX;
+                fixed = pattern.substring(1);
+            }
+            else
+            {
+                kind = Kind.WILDCARD;
+                fixed = null;
+            }
+        }
+
+        private boolean matches(String name)
+        {
+            switch (kind)
+            {
+            case LITERAL:
+                return ignoreCase ? fixed.equalsIgnoreCase(name) : fixed.equals(name);
+            case PREFIX:
+                return name.regionMatches(ignoreCase, 0, fixed, 0, fixed.length());
+            case SUFFIX:
+                return name.length() >= fixed.length()
+                        && name.regionMatches(ignoreCase, name.length() - fixed.length(), fixed, 0, fixed.length());
+            case ANY:
+            case ANY_PATH:
+                return true;
+            default:
+                return wildcardMatches(pattern, name, ignoreCase);
+            }
+        }
+    }
+
+    /**
+     * Match a name against a pattern made of '*' and '?' wildcards, by
+     * backtracking on the last '*' seen
+     */
+    static boolean wildcardMatches(String pattern, String name, boolean ignoreCase)
+    {
+        int patternIdx = 0;
+        int nameIdx = 0;
+        int starIdx = -1;
+        int starNameIdx = 0;
+        while (nameIdx < name.length())
+        {
+            if (patternIdx < pattern.length() && pattern.charAt(patternIdx) != '*'
+                    && (pattern.charAt(patternIdx) == '?'
+                            || sameChar(pattern.charAt(patternIdx), name.charAt(nameIdx), ignoreCase)))
+            {
+                patternIdx++;
+                nameIdx++;
+            }
+            else if (patternIdx < pattern.length() && pattern.charAt(patternIdx) == '*')
+            {
+                starIdx = patternIdx++;
+                starNameIdx = nameIdx;
+            }
+            else if (starIdx != -1)
+            {
+                patternIdx = starIdx + 1;
+                nameIdx = ++starNameIdx;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        while (patternIdx < pattern.length() && pattern.charAt(patternIdx) == '*')
+        {
+            patternIdx++;
+        }
+        return patternIdx == pattern.length();
+    }
+
+    private static boolean sameChar(char c1, char c2, boolean ignoreCase)
+    {
+        if (c1 == c2)
+        {
+            return true;
+        }
+        if (!ignoreCase)
+        {
+            return false;
+        }
+        return Character.toLowerCase(c1) == Character.toLowerCase(c2)
+                || Character.toUpperCase(c1) == Character.toUpperCase(c2);
+    }
+}
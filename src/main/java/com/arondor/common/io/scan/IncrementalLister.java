@@ -0,0 +1,216 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Traversal engine decorator for incremental scans.
+ *
+ * A folder whose modification time did not change since the previous snapshot
+ * is not listed : its children are replayed from the snapshot. Other folders
+ * are listed by the underlying engine, and their children are compared with
+ * the snapshot to tag each entry with its {@link ScanChange}. Children gone
+ * since the snapshot are visited as {@link ScanChange#REMOVED}, and so are the
+ * children of a removed folder.
+ *
+ * Every folder listed or replayed is written to the new snapshot.
+ */
+class IncrementalLister implements DirectoryLister
+{
+    private static final Logger LOGGER = Logger.getLogger(IncrementalLister.class);
+
+    private static final Comparator<ScanEntry> NAME_COMPARATOR = new Comparator<ScanEntry>()
+    {
+        @Override
+        public int compare(ScanEntry o1, ScanEntry o2)
+        {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    private final DirectoryLister lister;
+
+    private final ScanSnapshot snapshot;
+
+    private final ScanSnapshotWriter writer;
+
+    private final boolean verifyUnchangedFolders;
+
+    /**
+     * @param lister
+     *            the underlying traversal engine
+     * @param snapshot
+     *            the previous snapshot, or null for the first scan
+     * @param writer
+     *            the new snapshot
+     * @param verifyUnchangedFolders
+     *            read the attributes of the files of unchanged folders, to
+     *            detect files modified in place
+     */
+    IncrementalLister(DirectoryLister lister, ScanSnapshot snapshot, ScanSnapshotWriter writer,
+            boolean verifyUnchangedFolders)
+    {
+        this.lister = lister;
+        this.snapshot = snapshot;
+        this.writer = writer;
+        this.verifyUnchangedFolders = verifyUnchangedFolders;
+    }
+
+    @Override
+    public void listChildren(File folder, boolean sorted, final EntryVisitor visitor)
+    {
+        String path = folder.getAbsolutePath();
+        ScanSnapshot.Folder previous = snapshot != null ? snapshot.findFolder(path) : null;
+        /*
+         * The modification time is read before listing : a change made while
+         * listing will be seen by the next scan
+         */
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(folder.toPath(), BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException e)
+        {
+            attributes = null;
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not read attributes of folder : " + path, e);
+            return;
+        }
+        if (attributes == null || !attributes.isDirectory())
+        {
+            if (previous != null)
+            {
+                replay(folder, previous, ScanChange.REMOVED, sorted, visitor);
+            }
+            return;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        try
+        {
+            if (previous != null && previous.getLastModified() == lastModified)
+            {
+                if (verifyUnchangedFolders)
+                {
+                    writer.writeFolder(path, lastModified, verify(folder, previous, sorted, visitor));
+                }
+                else
+                {
+                    writer.copyFolder(path, previous.getRecord());
+                    replay(folder, previous, ScanChange.UNCHANGED, sorted, visitor);
+                }
+                return;
+            }
+            writer.writeFolder(path, lastModified, list(folder, previous, sorted, visitor));
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not write snapshot of folder : " + path, e);
+        }
+    }
+
+    private void replay(File folder, ScanSnapshot.Folder previous, ScanChange change, boolean sorted,
+            EntryVisitor visitor)
+    {
+        List<ScanEntry> children = previous.readChildren(folder);
+        if (sorted)
+        {
+            Collections.sort(children, NAME_COMPARATOR);
+        }
+        for (ScanEntry child : children)
+        {
+            child.setChange(change);
+            visitor.visit(child);
+        }
+    }
+
+    private List<ScanEntry> verify(File folder, ScanSnapshot.Folder previous, boolean sorted, EntryVisitor visitor)
+    {
+        List<ScanEntry> children = previous.readChildren(folder);
+        if (sorted)
+        {
+            Collections.sort(children, NAME_COMPARATOR);
+        }
+        List<ScanEntry> current = new ArrayList<ScanEntry>(children.size());
+        for (ScanEntry child : children)
+        {
+            if (child.isDirectory())
+            {
+                child.setChange(ScanChange.UNCHANGED);
+                current.add(child);
+                visitor.visit(child);
+                continue;
+            }
+            ScanEntry fresh = new ScanEntry(child.getFile());
+            if (!fresh.readAttributes())
+            {
+                child.setChange(ScanChange.REMOVED);
+                visitor.visit(child);
+                continue;
+            }
+            fresh.setChange(compare(child, fresh));
+            current.add(fresh);
+            visitor.visit(fresh);
+        }
+        return current;
+    }
+
+    private List<ScanEntry> list(File folder, ScanSnapshot.Folder previous, boolean sorted, final EntryVisitor visitor)
+    {
+        final Map<String, ScanEntry> previousChildren = previous != null ? previous.readChildrenByName(folder)
+                : Collections.<String, ScanEntry> emptyMap();
+        final List<ScanEntry> children = new ArrayList<ScanEntry>();
+        lister.listChildren(folder, sorted, new EntryVisitor()
+        {
+            @Override
+            public void visit(ScanEntry child)
+            {
+                if (!child.readAttributes())
+                {
+                    return;
+                }
+                ScanEntry previousChild = previousChildren.isEmpty() ? null : previousChildren.remove(child.getName());
+                child.setChange(compare(previousChild, child));
+                if (previousChild != null && previousChild.isDirectory() != child.isDirectory())
+                {
+                    previousChild.setChange(ScanChange.REMOVED);
+                    visitor.visit(previousChild);
+                }
+                children.add(child);
+                visitor.visit(child);
+            }
+        });
+        for (ScanEntry removed : previousChildren.values())
+        {
+            removed.setChange(ScanChange.REMOVED);
+            visitor.visit(removed);
+        }
+        return children;
+    }
+
+    private static ScanChange compare(ScanEntry previous, ScanEntry current)
+    {
+        if (previous == null || previous.isDirectory() != current.isDirectory())
+        {
+            return ScanChange.ADDED;
+        }
+        if (!current.isDirectory()
+                && (previous.getSize() != current.getSize() || previous.getLastModified() != current.getLastModified()))
+        {
+            return ScanChange.MODIFIED;
+        }
+        return ScanChange.UNCHANGED;
+    }
+}
@@ -0,0 +1,179 @@
+package com.arondor.common.io.scan;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Adaptive limit of folder listings, driven by their latency (AIMD).
+ *
+ * The number of concurrent listings grows by one for each window of listings
+ * faster than the target latency, and is halved when the average latency
+ * exceeds it, at most once per average listing time. Down to a single
+ * listing, a growing pause is inserted between listings, shrinking back once
+ * latency recovers.
+ */
+final class ListingThrottle
+{
+    private static final Logger LOGGER = Logger.getLogger(ListingThrottle.class);
+
+    private static final long MIN_DELAY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long MAX_DELAY = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Weight of the last listing in the average latency
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final long targetNanos;
+
+    private final int maxConcurrency;
+
+    private double concurrency;
+
+    private int active = 0;
+
+    private long delayNanos = 0;
+
+    private long nextStart = 0;
+
+    private double averageNanos = -1;
+
+    private long lastDecrease;
+
+    /**
+     * @param targetMillis
+     *            the target listing latency
+     * @param maxConcurrency
+     *            the maximum number of concurrent listings, also the initial
+     *            one
+     */
+    ListingThrottle(long targetMillis, int maxConcurrency)
+    {
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.concurrency = this.maxConcurrency;
+        this.lastDecrease = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    }
+
+    /**
+     * Wait until a listing may start
+     * 
+     * @return true if the listing may start and must be followed by
+     *         {@link #release(long)}, false if interrupted while waiting :
+     *         no slot is taken then, and the interrupt status is kept
+     */
+    boolean acquire()
+    {
+        long pause = 0;
+        synchronized (this)
+        {
+            while (active >= (int) concurrency)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            active++;
+            if (delayNanos > 0)
+            {
+                long now = System.nanoTime();
+                long start = Math.max(now, nextStart);
+                nextStart = start + delayNanos;
+                pause = start - now;
+            }
+        }
+        if (pause > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                synchronized (this)
+                {
+                    active--;
+                    notifyAll();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A listing is over
+     *
+     * @param latencyNanos
+     *            the time it took, excluding the pause
+     */
+    synchronized void release(long latencyNanos)
+    {
+        active--;
+        averageNanos = averageNanos < 0 ? latencyNanos : averageNanos * (1 - SMOOTHING) + latencyNanos
+                * SMOOTHING;
+        long now = System.nanoTime();
+        if (averageNanos > targetNanos)
+        {
+            if (now - lastDecrease > averageNanos)
+            {
+                lastDecrease = now;
+                if (concurrency >= 2)
+                {
+                    concurrency = Math.max(1, concurrency / 2);
+                }
+                else
+                {
+                    delayNanos = Math.min(MAX_DELAY, Math.max(MIN_DELAY, delayNanos * 2));
+                }
+                if (LOGGER.isDebugEnabled())
+                {
+                    LOGGER.debug("Listing latency " + getAverageLatencyMillis() + "ms above target, " + this);
+                }
+            }
+        }
+        else if (delayNanos > 0)
+        {
+            delayNanos = delayNanos - delayNanos / 8;
+            if (delayNanos < MIN_DELAY)
+            {
+                delayNanos = 0;
+            }
+        }
+        else if (concurrency < maxConcurrency)
+        {
+            concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+        }
+        notifyAll();
+    }
+
+    synchronized int getConcurrency()
+    {
+        return (int) concurrency;
+    }
+
+    synchronized double getDelayMillis()
+    {
+        return delayNanos / 1000000d;
+    }
+
+    synchronized double getAverageLatencyMillis()
+    {
+        return Math.max(0, averageNanos) / 1000000d;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "concurrency=" + (int) concurrency + "/" + maxConcurrency + ", delay=" + getDelayMillis() + "ms";
+    }
+}
@@ -0,0 +1,9 @@
+package com.arondor.common.io.scan;
+
+/**
+ * State of a file compared to the previous scan snapshot
+ */
+public enum ScanChange
+{
+    ADDED, MODIFIED, REMOVED, UNCHANGED
+}
@@ -0,0 +1,17 @@
+package com.arondor.common.io.scan;
+
+/**
+ * Notified of the files added, modified or removed since the previous scan
+ * snapshot, or, in continuous mode, since the initial walk
+ */
+public interface ScanChangeListener
+{
+    /**
+     * @param path
+     *            absolute path of the file
+     * @param change
+     *            {@link ScanChange#ADDED}, {@link ScanChange#MODIFIED} or
+     *            {@link ScanChange#REMOVED}
+     */
+    void fileChanged(String path, ScanChange change);
+}
@@ -0,0 +1,420 @@
+package com.arondor.common.io.scan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Traversal frontier of a scan, periodically written to a file so that an
+ * interrupted scan can be resumed.
+ *
+ * The frontier is the set of folders discovered but not fully listed yet. A
+ * folder enters it when its parent is listed, and leaves it once listed, its
+ * subfolders entering it at the same time. Folders are listed in name order,
+ * and the last file emitted from each is kept, so that a folder being listed
+ * when the checkpoint was written is resumed after that file.
+ *
+ * Folders are walked from a cursor : the index of their root in the
+ * {@link ScanPlanner} and of the automaton in {@link ScanPlanner.Root#compile()}.
+ * Walks up to the last one started are only resumed from the frontier.
+ */
+final class ScanCheckpoint
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanCheckpoint.class);
+
+    private static final int MAGIC = 0x4153434b;
+
+    private static final int VERSION = 1;
+
+    /**
+     * A folder of the frontier
+     */
+    static final class Folder
+    {
+        private final File folder;
+
+        private final int rootIndex;
+
+        private final int globIndex;
+
+        private final long state;
+
+        private final int depth;
+
+        /**
+         * Files up to this name were emitted by a previous run, null if none
+         */
+        private final String resumeAfter;
+
+        private volatile String lastName;
+
+        Folder(File folder, int rootIndex, int globIndex, long state, int depth, String resumeAfter)
+        {
+            this.folder = folder;
+            this.rootIndex = rootIndex;
+            this.globIndex = globIndex;
+            this.state = state;
+            this.depth = depth;
+            this.resumeAfter = resumeAfter;
+            this.lastName = resumeAfter;
+        }
+
+        File getFolder()
+        {
+            return folder;
+        }
+
+        int getRootIndex()
+        {
+            return rootIndex;
+        }
+
+        int getGlobIndex()
+        {
+            return globIndex;
+        }
+
+        long getState()
+        {
+            return state;
+        }
+
+        int getDepth()
+        {
+            return depth;
+        }
+
+        /**
+         * @return true if the file was emitted before the folder was resumed
+         */
+        boolean isEmitted(String name)
+        {
+            return resumeAfter != null && name.compareTo(resumeAfter) <= 0;
+        }
+
+        /**
+         * Record a file emitted : called in name order
+         */
+        void setLastName(String lastName)
+        {
+            this.lastName = lastName;
+        }
+    }
+
+    private final File file;
+
+    private final List<String> filters;
+
+    private final long interval;
+
+    private final Map<Folder, Boolean> frontier = new ConcurrentHashMap<Folder, Boolean>();
+
+    /**
+     * Moving folders in the frontier is shared, copying it is exclusive
+     */
+    private final ReadWriteLock frontierLock = new ReentrantReadWriteLock();
+
+    private volatile long nextWrite;
+
+    private volatile int startedRoot = -1;
+
+    private volatile int startedGlob = -1;
+
+    /**
+     * The checkpoint read to resume, null if starting over
+     */
+    private final List<Folder> resumed;
+
+    private final int resumedRoot;
+
+    private final int resumedGlob;
+
+    private ScanCheckpoint(File file, List<String> filters, long interval, List<Folder> resumed, int resumedRoot,
+            int resumedGlob)
+    {
+        this.file = file;
+        this.filters = new ArrayList<String>(filters);
+        this.interval = interval;
+        this.resumed = resumed;
+        this.resumedRoot = resumedRoot;
+        this.resumedGlob = resumedGlob;
+        this.nextWrite = System.currentTimeMillis() + interval;
+    }
+
+    /**
+     * Open the checkpoint of a scan, resuming from the file if it exists
+     *
+     * @param file
+     *            the checkpoint file
+     * @param filters
+     *            the filters of the scan, which must be those of the
+     *            checkpoint
+     * @param interval
+     *            the minimum delay between two writes, in milliseconds
+     */
+    static ScanCheckpoint open(File file, List<String> filters, long interval) throws IOException
+    {
+        if (!file.exists())
+        {
+            return new ScanCheckpoint(file, filters, interval, null, -1, -1);
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        try
+        {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+            {
+                throw new IOException("Invalid checkpoint " + file.getAbsolutePath());
+            }
+            int filterCount = input.readInt();
+            List<String> checkpointFilters = new ArrayList<String>(filterCount);
+            for (int idx = 0; idx < filterCount; idx++)
+            {
+                checkpointFilters.add(input.readUTF());
+            }
+            if (!checkpointFilters.equals(filters))
+            {
+                throw new IOException("Checkpoint " + file.getAbsolutePath() + " was written for other filters : "
+                        + checkpointFilters);
+            }
+            int resumedRoot = input.readInt();
+            int resumedGlob = input.readInt();
+            long emitted = input.readLong();
+            int folderCount = input.readInt();
+            List<Folder> resumed = new ArrayList<Folder>(folderCount);
+            for (int idx = 0; idx < folderCount; idx++)
+            {
+                int rootIndex = input.readInt();
+                int globIndex = input.readInt();
+                long state = input.readLong();
+                int depth = input.readInt();
+                File folder = new File(input.readUTF());
+                String lastName = input.readBoolean() ? input.readUTF() : null;
+                resumed.add(new Folder(folder, rootIndex, globIndex, state, depth, lastName));
+            }
+            LOGGER.info("Resuming from checkpoint " + file.getAbsolutePath() + ", files emitted=" + emitted
+                    + ", folders pending=" + folderCount);
+            return new ScanCheckpoint(file, filters, interval, resumed, resumedRoot, resumedGlob);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * @return true if the walk was started by the checkpointed scan, and is
+     *         to be resumed from its frontier only
+     */
+    boolean isResumed(int rootIndex, int globIndex)
+    {
+        return resumed != null
+                && (rootIndex < resumedRoot || (rootIndex == resumedRoot && globIndex <= resumedGlob));
+    }
+
+    /**
+     * @return the frontier of a resumed walk
+     */
+    List<Folder> getResumedFolders(int rootIndex, int globIndex)
+    {
+        List<Folder> folders = new ArrayList<Folder>();
+        for (Folder folder : resumed)
+        {
+            if (folder.rootIndex == rootIndex && folder.globIndex == globIndex)
+            {
+                folders.add(folder);
+            }
+        }
+        return folders;
+    }
+
+    /**
+     * A walk starts : its root enters the frontier
+     */
+    void startWalk(Folder root)
+    {
+        frontierLock.readLock().lock();
+        try
+        {
+            frontier.put(root, Boolean.TRUE);
+            startedRoot = root.rootIndex;
+            startedGlob = root.globIndex;
+        }
+        finally
+        {
+            frontierLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A resumed folder enters the frontier
+     */
+    void resume(Folder folder)
+    {
+        frontier.put(folder, Boolean.TRUE);
+    }
+
+    /**
+     * A folder is listed : it leaves the frontier, and its subfolders enter it
+     */
+    void folderListed(Folder folder, List<Folder> children)
+    {
+        frontierLock.readLock().lock();
+        try
+        {
+            for (Folder child : children)
+            {
+                frontier.put(child, Boolean.TRUE);
+            }
+            frontier.remove(folder);
+        }
+        finally
+        {
+            frontierLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the checkpoint if the interval is elapsed
+     *
+     * @param emitted
+     *            the number of files emitted so far
+     */
+    void maybeWrite(long emitted)
+    {
+        if (System.currentTimeMillis() < nextWrite)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (System.currentTimeMillis() < nextWrite)
+            {
+                return;
+            }
+            try
+            {
+                write(emitted);
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Could not write checkpoint " + file.getAbsolutePath(), e);
+            }
+            nextWrite = System.currentTimeMillis() + interval;
+        }
+    }
+
+    /**
+     * Write the checkpoint now
+     */
+    synchronized void write(long emitted) throws IOException
+    {
+        List<Folder> folders;
+        int root;
+        int glob;
+        frontierLock.writeLock().lock();
+        try
+        {
+            folders = new ArrayList<Folder>(frontier.keySet());
+            root = startedRoot;
+            glob = startedGlob;
+        }
+        finally
+        {
+            frontierLock.writeLock().unlock();
+        }
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile),
+                65536));
+        try
+        {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(filters.size());
+            for (String filter : filters)
+            {
+                output.writeUTF(filter);
+            }
+            output.writeInt(root);
+            output.writeInt(glob);
+            output.writeLong(emitted);
+            output.writeInt(folders.size());
+            for (Folder folder : folders)
+            {
+                output.writeInt(folder.rootIndex);
+                output.writeInt(folder.globIndex);
+                output.writeLong(folder.state);
+                output.writeInt(folder.depth);
+                output.writeUTF(folder.folder.getAbsolutePath());
+                String lastName = folder.lastName;
+                output.writeBoolean(lastName != null);
+                if (lastName != null)
+                {
+                    output.writeUTF(lastName);
+                }
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        try
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Wrote checkpoint " + file.getAbsolutePath() + ", folders pending=" + folders.size());
+        }
+    }
+
+    /**
+     * @return true if resuming from a previous scan
+     */
+    boolean isResuming()
+    {
+        return resumed != null;
+    }
+
+    /**
+     * The scan is over : drop the checkpoint if all folders were listed, or
+     * write the folders left
+     *
+     * @param emitted
+     *            the number of files emitted so far
+     */
+    synchronized void finish(long emitted) throws IOException
+    {
+        if (!frontier.isEmpty())
+        {
+            LOGGER.warn("Scan not complete, folders pending=" + frontier.size() + ", keeping checkpoint "
+                    + file.getAbsolutePath());
+            write(emitted);
+            return;
+        }
+        if (file.exists() && !file.delete())
+        {
+            LOGGER.warn("Could not delete checkpoint " + file.getAbsolutePath());
+        }
+    }
+}
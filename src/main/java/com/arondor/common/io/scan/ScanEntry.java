@@ -0,0 +1,181 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.log4j.Logger;
+
+/**
+ * One child of a listed folder, as seen by the traversal engine.
+ * 
+ * When the engine provides the attributes read during the listing, the entry
+ * type is taken from them ; otherwise it is lazily fetched from the file
+ * system, and only when asked for : either alone, or with all attributes in
+ * the same call when the engine expects them to be needed.
+ */
+final class ScanEntry
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanEntry.class);
+
+    private final File file;
+
+    private Boolean directory;
+
+    private boolean attributesRead;
+
+    private long size = -1;
+
+    private long lastModified = -1;
+
+    private Object fileKey;
+
+    private ScanChange change;
+
+    /**
+     * Read all attributes when the type is first asked for
+     */
+    private final boolean lazyAttributes;
+
+    ScanEntry(File file)
+    {
+        this(file, false);
+    }
+
+    /**
+     * @param lazyAttributes
+     *            read all attributes, in a single call, when the type is
+     *            first asked for
+     */
+    ScanEntry(File file, boolean lazyAttributes)
+    {
+        this.file = file;
+        this.lazyAttributes = lazyAttributes;
+    }
+
+    ScanEntry(File file, BasicFileAttributes attributes)
+    {
+        this.file = file;
+        this.lazyAttributes = false;
+        setAttributes(attributes);
+    }
+
+    ScanEntry(File file, boolean directory, long size, long lastModified)
+    {
+        this.file = file;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.attributesRead = true;
+        this.lazyAttributes = false;
+    }
+
+    private void setAttributes(BasicFileAttributes attributes)
+    {
+        this.directory = attributes.isDirectory();
+        this.size = attributes.size();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.fileKey = attributes.fileKey();
+        this.attributesRead = true;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public String getName()
+    {
+        return file.getName();
+    }
+
+    public String getAbsolutePath()
+    {
+        return file.getAbsolutePath();
+    }
+
+    public boolean isDirectory()
+    {
+        if (directory == null && !(lazyAttributes && readAttributes()))
+        {
+            directory = file.isDirectory();
+        }
+        return directory;
+    }
+
+    /**
+     * Read the attributes from the file system, unless the traversal engine
+     * already provided them
+     * 
+     * @return false if the attributes could not be read
+     */
+    public boolean readAttributes()
+    {
+        if (attributesRead)
+        {
+            return true;
+        }
+        try
+        {
+            setAttributes(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+            return true;
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not read attributes of " + file.getAbsolutePath() + " : " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean hasAttributes()
+    {
+        return attributesRead;
+    }
+
+    /**
+     * @return the size, or -1 if attributes were not read
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the last modification time in milliseconds, or -1 if attributes
+     *         were not read
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the file key, or null if attributes were not read or do not
+     *         provide it
+     */
+    public Object getFileKey()
+    {
+        return fileKey;
+    }
+
+    /**
+     * @return the change since the previous scan snapshot, or null when not
+     *         scanning incrementally
+     */
+    public ScanChange getChange()
+    {
+        return change;
+    }
+
+    public void setChange(ScanChange change)
+    {
+        this.change = change;
+    }
+
+    @Override
+    public String toString()
+    {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,378 @@
+package com.arondor.common.io.scan;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live metrics of a scan : throughput, folder listing latencies and
+ * scheduling decisions. Updated from all scanning threads without locking,
+ * except to track the slowest folders.
+ */
+final class ScanMetrics
+{
+    /**
+     * Number of slowest folders kept
+     */
+    static final int SLOWEST_FOLDERS = 10;
+
+    private final RateCounter folders = new RateCounter();
+
+    private final RateCounter entries = new RateCounter();
+
+    private final RateCounter matched = new RateCounter();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final AtomicLong forkedTasks = new AtomicLong();
+
+    private final AtomicLong inlinedTasks = new AtomicLong();
+
+    private final String[] slowestPaths = new String[SLOWEST_FOLDERS];
+
+    private final long[] slowestNanos = new long[SLOWEST_FOLDERS];
+
+    /**
+     * Latency of the fastest of the slowest folders, to skip locking
+     */
+    private volatile long slowestThreshold = 0;
+
+    private volatile long startTime = System.currentTimeMillis();
+
+    void reset()
+    {
+        folders.reset();
+        entries.reset();
+        matched.reset();
+        latencies.reset();
+        forkedTasks.set(0);
+        inlinedTasks.set(0);
+        synchronized (slowestPaths)
+        {
+            for (int idx = 0; idx < SLOWEST_FOLDERS; idx++)
+            {
+                slowestPaths[idx] = null;
+                slowestNanos[idx] = 0;
+            }
+            slowestThreshold = 0;
+        }
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @param folder
+     *            the folder listed
+     * @param nanos
+     *            the time spent listing it, excluding the time spent handling
+     *            its children
+     * @param entryCount
+     *            the number of children
+     */
+    void folderListed(String folder, long nanos, int entryCount)
+    {
+        folders.add(1);
+        entries.add(entryCount);
+        latencies.record(nanos);
+        if (nanos > slowestThreshold)
+        {
+            addSlowest(folder, nanos);
+        }
+    }
+
+    void fileMatched()
+    {
+        matched.add(1);
+    }
+
+    void taskForked()
+    {
+        forkedTasks.incrementAndGet();
+    }
+
+    void taskInlined()
+    {
+        inlinedTasks.incrementAndGet();
+    }
+
+    private void addSlowest(String folder, long nanos)
+    {
+        synchronized (slowestPaths)
+        {
+            int idx = SLOWEST_FOLDERS - 1;
+            if (nanos <= slowestNanos[idx])
+            {
+                return;
+            }
+            while (idx > 0 && slowestNanos[idx - 1] < nanos)
+            {
+                slowestNanos[idx] = slowestNanos[idx - 1];
+                slowestPaths[idx] = slowestPaths[idx - 1];
+                idx--;
+            }
+            slowestNanos[idx] = nanos;
+            slowestPaths[idx] = folder;
+            slowestThreshold = slowestNanos[SLOWEST_FOLDERS - 1];
+        }
+    }
+
+    long getFoldersListed()
+    {
+        return folders.getTotal();
+    }
+
+    long getEntriesListed()
+    {
+        return entries.getTotal();
+    }
+
+    long getFilesMatched()
+    {
+        return matched.getTotal();
+    }
+
+    double getFoldersPerSecond()
+    {
+        return folders.getRate();
+    }
+
+    double getEntriesPerSecond()
+    {
+        return entries.getRate();
+    }
+
+    double getMatchedPerSecond()
+    {
+        return matched.getRate();
+    }
+
+    /**
+     * @param percentile
+     *            the percentile, between 0 and 100
+     * @return the listing latency at this percentile, in milliseconds
+     */
+    double getListingLatencyMillis(double percentile)
+    {
+        return latencies.getPercentile(percentile) / 1000000d;
+    }
+
+    double getMaxListingLatencyMillis()
+    {
+        return latencies.getMax() / 1000000d;
+    }
+
+    /**
+     * @return the slowest folders to list, slowest first, with their latency
+     */
+    String[] getSlowestFolders()
+    {
+        synchronized (slowestPaths)
+        {
+            int count = 0;
+            while (count < SLOWEST_FOLDERS && slowestPaths[count] != null)
+            {
+                count++;
+            }
+            String[] slowest = new String[count];
+            for (int idx = 0; idx < count; idx++)
+            {
+                slowest[idx] = slowestPaths[idx] + " : " + (slowestNanos[idx] / 1000000d) + " ms";
+            }
+            return slowest;
+        }
+    }
+
+    long getForkedTasks()
+    {
+        return forkedTasks.get();
+    }
+
+    long getInlinedTasks()
+    {
+        return inlinedTasks.get();
+    }
+
+    /**
+     * @return the ratio of subfolders walked by another task rather than
+     *         inline
+     */
+    double getForkRatio()
+    {
+        long forked = forkedTasks.get();
+        long total = forked + inlinedTasks.get();
+        return total == 0 ? 0 : (double) forked / total;
+    }
+
+    long getElapsedMillis()
+    {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "folders=" + getFoldersListed() + ", entries=" + getEntriesListed() + ", matched="
+                + getFilesMatched() + ", listing p50=" + getListingLatencyMillis(50) + "ms, p99="
+                + getListingLatencyMillis(99) + "ms, max=" + getMaxListingLatencyMillis() + "ms, forked="
+                + getForkedTasks() + ", inlined=" + getInlinedTasks() + ", elapsed=" + getElapsedMillis() + "ms";
+    }
+
+    /**
+     * Counts events by second, over the last {@link #BUCKETS} seconds
+     */
+    static final class RateCounter
+    {
+        private static final int BUCKETS = 16;
+
+        /**
+         * The rate is averaged over the last complete seconds
+         */
+        private static final int WINDOW = 10;
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLongArray seconds = new AtomicLongArray(BUCKETS);
+
+        void add(long count)
+        {
+            total.addAndGet(count);
+            long second = System.currentTimeMillis() / 1000;
+            int bucket = (int) (second % BUCKETS);
+            long bucketSecond = seconds.get(bucket);
+            if (bucketSecond != second && seconds.compareAndSet(bucket, bucketSecond, second))
+            {
+                /*
+                 * A racing add may be lost, which is fine for a rate
+                 */
+                counts.set(bucket, 0);
+            }
+            counts.addAndGet(bucket, count);
+        }
+
+        long getTotal()
+        {
+            return total.get();
+        }
+
+        /**
+         * @return the number of events per second over the last complete
+         *         seconds
+         */
+        double getRate()
+        {
+            long now = System.currentTimeMillis() / 1000;
+            long sum = 0;
+            for (long second = now - WINDOW; second < now; second++)
+            {
+                int bucket = (int) (second % BUCKETS);
+                if (seconds.get(bucket) == second)
+                {
+                    sum += counts.get(bucket);
+                }
+            }
+            return (double) sum / WINDOW;
+        }
+
+        void reset()
+        {
+            total.set(0);
+            for (int idx = 0; idx < BUCKETS; idx++)
+            {
+                counts.set(idx, 0);
+                seconds.set(idx, 0);
+            }
+        }
+    }
+
+    /**
+     * Log-linear histogram of latencies in microseconds : each power of two is
+     * split in {@link #SUB_BUCKETS} buckets, for a precision of about 12%
+     */
+    static final class LatencyHistogram
+    {
+        private static final int SUB_BITS = 3;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos)
+        {
+            counts.incrementAndGet(getBucket(Math.max(0, nanos / 1000)));
+            count.incrementAndGet();
+            long previous = max.get();
+            while (nanos > previous && !max.compareAndSet(previous, nanos))
+            {
+                previous = max.get();
+            }
+        }
+
+        static int getBucket(long micros)
+        {
+            if (micros < SUB_BUCKETS)
+            {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * @return the highest latency of a bucket, in microseconds
+         */
+        static long getBucketLimit(int bucket)
+        {
+            if (bucket < SUB_BUCKETS)
+            {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        /**
+         * @return the latency at a percentile, in nanoseconds, bounded by the
+         *         highest latency recorded
+         */
+        long getPercentile(double percentile)
+        {
+            long total = count.get();
+            if (total == 0)
+            {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100d);
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++)
+            {
+                seen += counts.get(bucket);
+                if (seen >= rank && seen > 0)
+                {
+                    return Math.min(getBucketLimit(bucket) * 1000 + 999, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        long getMax()
+        {
+            return max.get();
+        }
+
+        void reset()
+        {
+            for (int idx = 0; idx < counts.length(); idx++)
+            {
+                counts.set(idx, 0);
+            }
+            count.set(0);
+            max.set(0);
+        }
+    }
+}
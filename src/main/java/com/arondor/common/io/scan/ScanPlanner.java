@@ -0,0 +1,227 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Plans the traversals of a set of filters.
+ *
+ * Each wildcard filter is split into its root folder (the wildcard-free
+ * leading part) and its glob. Filters whose root is the same as, or lies
+ * within, the root of another filter are walked together from the outermost
+ * root, with all their globs compiled into a single automaton : each shared
+ * folder is listed once, each entry is evaluated against all globs at once,
+ * and a file matching several filters is emitted once, without keeping track
+ * of emitted paths.
+ *
+ * Globs too many for a single automaton are split over several ones, each
+ * walking the root again : a file is then only emitted by the first automaton
+ * matching it. Fully-resolved paths are emitted before walking, and skipped
+ * by the walks matching them.
+ */
+final class ScanPlanner
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanPlanner.class);
+
+    /**
+     * A folder to walk, with the globs to walk it with
+     */
+    static final class Root
+    {
+        private final File folder;
+
+        private final Path path;
+
+        private final List<String[]> globs = new ArrayList<String[]>();
+
+        private final List<Integer> exactPrefixes = new ArrayList<Integer>();
+
+        private Root(File folder, Path path)
+        {
+            this.folder = folder;
+            this.path = path;
+        }
+
+        File getFolder()
+        {
+            return folder;
+        }
+
+        /**
+         * @return the automata to walk the folder with : a single one, unless
+         *         globs are too many to fit in one ; a file matched by an
+         *         automaton is not to be emitted by the next ones
+         */
+        List<GlobPattern> compile()
+        {
+            List<GlobPattern> automata = new ArrayList<GlobPattern>(1);
+            int start = 0;
+            int positions = 0;
+            for (int idx = 0; idx < globs.size(); idx++)
+            {
+                int count = GlobPattern.getPositionCount(globs.get(idx));
+                if (positions + count > GlobPattern.MAX_POSITIONS && idx > start)
+                {
+                    automata.add(compile(start, idx));
+                    start = idx;
+                    positions = 0;
+                }
+                positions += count;
+            }
+            automata.add(compile(start, globs.size()));
+            if (automata.size() > 1)
+            {
+                LOGGER.warn("Too many filters for folder " + folder.getAbsolutePath() + ", walking it "
+                        + automata.size() + " times");
+            }
+            return automata;
+        }
+
+        private GlobPattern compile(int start, int end)
+        {
+            int[] prefixes = new int[end - start];
+            for (int idx = start; idx < end; idx++)
+            {
+                prefixes[idx - start] = exactPrefixes.get(idx);
+            }
+            return GlobPattern.compile(globs.subList(start, end), prefixes);
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder(folder.getPath()).append(" : ");
+            for (int idx = 0; idx < globs.size(); idx++)
+            {
+                builder.append(idx > 0 ? ", " : "").append(Arrays.toString(globs.get(idx)));
+            }
+            return builder.toString();
+        }
+    }
+
+    private final List<String> resolvedPaths = new ArrayList<String>();
+
+    private final List<Root> roots = new ArrayList<Root>();
+
+    ScanPlanner(List<String> filters)
+    {
+        List<Root> filterRoots = new ArrayList<Root>();
+        for (String filter : filters)
+        {
+            Root root = parse(filter);
+            if (root != null)
+            {
+                filterRoots.add(root);
+            }
+        }
+        /*
+         * A folder sorts before its descendants
+         */
+        Collections.sort(filterRoots, new Comparator<Root>()
+        {
+            @Override
+            public int compare(Root o1, Root o2)
+            {
+                return o1.path.compareTo(o2.path);
+            }
+        });
+        for (Root filterRoot : filterRoots)
+        {
+            merge(filterRoot);
+        }
+    }
+
+    /**
+     * @return the fully-defined paths, without wildcard
+     */
+    List<String> getResolvedPaths()
+    {
+        return resolvedPaths;
+    }
+
+    /**
+     * @return the folders to walk
+     */
+    List<Root> getRoots()
+    {
+        return roots;
+    }
+
+    private Root parse(String filter)
+    {
+        /*
+         * Simple optimization : if it's not a wildcard, it's fully-defined.
+         */
+        if (!AbstractDirectoryScanner.isWildcard(filter))
+        {
+            resolvedPaths.add(filter);
+            return null;
+        }
+        String wildcard = filter.replace('\\', '/');
+        String wildcards[] = wildcard.split("/");
+        if (wildcards[wildcards.length - 1].equals("**"))
+        {
+            LOGGER.warn("Invalid pattern " + wildcard + ", could not finish with **");
+            return null;
+        }
+        String rootFolderPath = "";
+        int startIdx;
+        for (startIdx = 0; startIdx < wildcards.length - 1; startIdx++)
+        {
+            if (AbstractDirectoryScanner.isWildcard(wildcards[startIdx]))
+            {
+                break;
+            }
+            rootFolderPath += wildcards[startIdx];
+            rootFolderPath += "/";
+        }
+        File rootFolder = new File(rootFolderPath);
+        Root root = new Root(rootFolder, rootFolder.toPath().toAbsolutePath().normalize());
+        root.globs.add(Arrays.copyOfRange(wildcards, startIdx, wildcards.length));
+        root.exactPrefixes.add(0);
+        return root;
+    }
+
+    private void merge(Root filterRoot)
+    {
+        for (Root root : roots)
+        {
+            if (filterRoot.path.startsWith(root.path))
+            {
+                /*
+                 * Walk this filter from the enclosing root : the folders in
+                 * between are matched as they are
+                 */
+                List<String> prefix = new ArrayList<String>();
+                for (Path name : root.path.relativize(filterRoot.path))
+                {
+                    if (!name.toString().isEmpty())
+                    {
+                        prefix.add(name.toString());
+                    }
+                }
+                String[] glob = filterRoot.globs.get(0);
+                String[] merged = new String[prefix.size() + glob.length];
+                prefix.toArray(merged);
+                System.arraycopy(glob, 0, merged, prefix.size(), glob.length);
+                root.globs.add(merged);
+                root.exactPrefixes.add(prefix.size());
+                return;
+            }
+        }
+        roots.add(filterRoot);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScanPlanner resolved=" + resolvedPaths + ", roots=" + roots;
+    }
+}
@@ -0,0 +1,889 @@
+package com.arondor.common.io.scan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Compact set of paths, such as the files of a scan.
+ *
+ * Paths are gathered in runs, sorted and front-coded : each path is stored as
+ * the length of the prefix it shares with the previous one, followed by the
+ * rest of its UTF-8 bytes. Every {@link #RESTART_INTERVAL} paths, a path is
+ * stored in full, and indexed in memory for lookups. Once runs held in memory
+ * exceed the memory budget, they are merged into a single run written to
+ * disk ; disk runs are themselves merged when too many.
+ *
+ * Paths are not checked for duplicates when added : a scan never emits a
+ * path twice. A path added twice is kept once per run, and once when runs are
+ * merged : {@link #size()} and {@link #sortedIterator()} count it once,
+ * {@link #iterator()} may return it once per run.
+ *
+ * Iterators reading runs written to disk hold their files open until
+ * exhausted : close those abandoned early. Closing the set closes them all.
+ * Runs merged while iterators still read them are deleted once the last of
+ * these iterators is exhausted or closed, so that iterators keep returning
+ * the paths of the set as it was when they were created.
+ */
+public final class ScanResultSet implements Iterable<String>, Closeable
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanResultSet.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int RESTART_INTERVAL = 128;
+
+    private static final int DEFAULT_RUN_SIZE = 65536;
+
+    private static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private static final int MAX_DISK_RUNS = 16;
+
+    /**
+     * Iterator over the paths of a set, to close when abandoned before the
+     * end
+     */
+    public interface PathIterator extends Iterator<String>, Closeable
+    {
+        /**
+         * Close the run files being read
+         */
+        @Override
+        void close();
+    }
+
+    private final long memoryBudget;
+
+    private final File spillFolder;
+
+    private final int runSize;
+
+    /**
+     * Paths added since the last run
+     */
+    private final List<String> buffer = new ArrayList<String>();
+
+    private final List<Run> memoryRuns = new ArrayList<Run>();
+
+    private long memoryRunBytes = 0;
+
+    private final List<Run> diskRuns = new ArrayList<Run>();
+
+    /**
+     * Disk runs merged into another one, still read by iterators
+     */
+    private final List<Run> mergedRuns = new ArrayList<Run>();
+
+    private long added = 0;
+
+    /**
+     * Number of distinct paths, -1 until counted again
+     */
+    private long distinctSize = 0;
+
+    private final Set<PathIterator> openIterators = Collections
+            .newSetFromMap(new WeakHashMap<PathIterator, Boolean>());
+
+    public ScanResultSet()
+    {
+        this(DEFAULT_MEMORY_BUDGET, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param memoryBudget
+     *            the size of the runs kept in memory, in bytes
+     * @param spillFolder
+     *            the folder of runs written to disk
+     */
+    public ScanResultSet(long memoryBudget, File spillFolder)
+    {
+        this(memoryBudget, spillFolder, DEFAULT_RUN_SIZE);
+    }
+
+    ScanResultSet(long memoryBudget, File spillFolder, int runSize)
+    {
+        this.memoryBudget = memoryBudget;
+        this.spillFolder = spillFolder;
+        this.runSize = runSize;
+    }
+
+    public synchronized void add(String path)
+    {
+        buffer.add(path);
+        added++;
+        distinctSize = -1;
+        if (buffer.size() >= runSize)
+        {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * @return the number of distinct paths : counted by merging the runs when
+     *         paths were added since the last call
+     */
+    public synchronized long size()
+    {
+        if (distinctSize < 0)
+        {
+            if (memoryRuns.isEmpty() && diskRuns.isEmpty())
+            {
+                Collections.sort(buffer);
+                distinctSize = 0;
+                String last = null;
+                for (String path : buffer)
+                {
+                    if (!path.equals(last))
+                    {
+                        distinctSize++;
+                    }
+                    last = path;
+                }
+            }
+            else
+            {
+                flushBuffer();
+                List<Run> runs = getRuns();
+                if (runs.size() == 1)
+                {
+                    distinctSize = runs.get(0).count;
+                }
+                else
+                {
+                    MergeIterator iterator = new MergeIterator(runs);
+                    try
+                    {
+                        long count = 0;
+                        while (iterator.hasNext())
+                        {
+                            iterator.next();
+                            count++;
+                        }
+                        distinctSize = count;
+                    }
+                    finally
+                    {
+                        iterator.close();
+                    }
+                }
+            }
+        }
+        return distinctSize;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return added == 0;
+    }
+
+    /**
+     * @return the number of runs written to disk
+     */
+    synchronized int getDiskRunCount()
+    {
+        return diskRuns.size();
+    }
+
+    /**
+     * Iterate over paths, sorted by run : the cheapest iteration, in no
+     * particular order
+     */
+    @Override
+    public synchronized PathIterator iterator()
+    {
+        flushBuffer();
+        return register(new RunsIterator(getRuns()));
+    }
+
+    /**
+     * Iterate over paths in {@link String#compareTo(String)} order, merging
+     * runs on the fly
+     */
+    public synchronized PathIterator sortedIterator()
+    {
+        flushBuffer();
+        return register(new MergeIterator(getRuns()));
+    }
+
+    private PathIterator register(PathIterator iterator)
+    {
+        openIterators.add(iterator);
+        return iterator;
+    }
+
+    public synchronized boolean contains(String path)
+    {
+        flushBuffer();
+        for (Run run : getRuns())
+        {
+            if (run.contains(path))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close the iterators still open, and delete the runs written to disk
+     */
+    @Override
+    public synchronized void close()
+    {
+        for (PathIterator iterator : new ArrayList<PathIterator>(openIterators))
+        {
+            iterator.close();
+        }
+        openIterators.clear();
+        /*
+         * Iterators dropped without being closed no longer hold their runs
+         */
+        for (Run run : diskRuns)
+        {
+            run.delete();
+        }
+        diskRuns.clear();
+        for (Run run : mergedRuns)
+        {
+            run.delete();
+        }
+        mergedRuns.clear();
+        memoryRuns.clear();
+        memoryRunBytes = 0;
+        buffer.clear();
+        added = 0;
+        distinctSize = 0;
+    }
+
+    private List<Run> getRuns()
+    {
+        List<Run> runs = new ArrayList<Run>(diskRuns.size() + memoryRuns.size());
+        runs.addAll(diskRuns);
+        runs.addAll(memoryRuns);
+        return runs;
+    }
+
+    private void flushBuffer()
+    {
+        if (buffer.isEmpty())
+        {
+            return;
+        }
+        Collections.sort(buffer);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(buffer.size() * 16);
+        RunWriter writer = new RunWriter(bytes);
+        try
+        {
+            String last = null;
+            for (String path : buffer)
+            {
+                if (!path.equals(last))
+                {
+                    writer.write(path);
+                }
+                last = path;
+            }
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not encode paths", e);
+        }
+        buffer.clear();
+        Run run = writer.toRun(bytes.toByteArray(), null);
+        memoryRuns.add(run);
+        memoryRunBytes += run.length;
+        if (memoryRunBytes > memoryBudget)
+        {
+            spill();
+        }
+    }
+
+    private void spill()
+    {
+        try
+        {
+            diskRuns.add(merge(memoryRuns));
+            memoryRuns.clear();
+            memoryRunBytes = 0;
+            if (diskRuns.size() >= MAX_DISK_RUNS)
+            {
+                Run merged = merge(diskRuns);
+                for (Iterator<Run> iterator = mergedRuns.iterator(); iterator.hasNext();)
+                {
+                    if (iterator.next().isDeleted())
+                    {
+                        iterator.remove();
+                    }
+                }
+                for (Run run : diskRuns)
+                {
+                    if (!run.release())
+                    {
+                        mergedRuns.add(run);
+                    }
+                }
+                diskRuns.clear();
+                diskRuns.add(merged);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not spill paths to " + spillFolder.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Merge runs into a run written to disk
+     */
+    private Run merge(List<Run> runs) throws IOException
+    {
+        File file = File.createTempFile("scan-result-", ".run", spillFolder);
+        RunWriter writer = new RunWriter(new BufferedOutputStream(new FileOutputStream(file), 65536));
+        MergeIterator iterator = new MergeIterator(runs);
+        boolean written = false;
+        try
+        {
+            while (iterator.hasNext())
+            {
+                writer.write(iterator.next());
+            }
+            written = true;
+        }
+        finally
+        {
+            iterator.close();
+            writer.close();
+            if (!written && !file.delete())
+            {
+                LOGGER.warn("Could not delete " + file.getAbsolutePath());
+            }
+        }
+        Run run = writer.toRun(null, file);
+        if (LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Wrote run " + file.getAbsolutePath() + ", paths=" + run.count + ", size=" + run.length);
+        }
+        return run;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private static int writeVarInt(OutputStream output, int value) throws IOException
+    {
+        int written = 1;
+        while ((value & ~0x7f) != 0)
+        {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+            written++;
+        }
+        output.write(value);
+        return written;
+    }
+
+    private static int readVarInt(InputStream input) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0;; shift += 7)
+        {
+            int b = input.read();
+            if (b < 0)
+            {
+                throw new IOException("Truncated run");
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * A sorted, front-coded run of paths, in memory or on disk
+     */
+    private static final class Run
+    {
+        private final byte[] data;
+
+        private final File file;
+
+        private final long length;
+
+        private final int count;
+
+        private final long[] restartOffsets;
+
+        private final String[] restartKeys;
+
+        private RandomAccessFile randomAccessFile;
+
+        /**
+         * The set and the iterators reading the run : deleted once released
+         * by all of them
+         */
+        private int references = 1;
+
+        private boolean deleted = false;
+
+        private Run(byte[] data, File file, long length, int count, long[] restartOffsets, String[] restartKeys)
+        {
+            this.data = data;
+            this.file = file;
+            this.length = length;
+            this.count = count;
+            this.restartOffsets = restartOffsets;
+            this.restartKeys = restartKeys;
+        }
+
+        private InputStream open() throws IOException
+        {
+            if (data != null)
+            {
+                return new ByteArrayInputStream(data);
+            }
+            return new BufferedInputStream(new FileInputStream(file), 65536);
+        }
+
+        private boolean contains(String path)
+        {
+            int restart = Arrays.binarySearch(restartKeys, path);
+            if (restart >= 0)
+            {
+                return true;
+            }
+            restart = -restart - 2;
+            if (restart < 0)
+            {
+                return false;
+            }
+            long start = restartOffsets[restart];
+            long end = restart + 1 < restartOffsets.length ? restartOffsets[restart + 1] : length;
+            int entries = Math.min(RESTART_INTERVAL, count - restart * RESTART_INTERVAL);
+            try
+            {
+                InputStream block;
+                if (data != null)
+                {
+                    block = new ByteArrayInputStream(data, (int) start, (int) (end - start));
+                }
+                else
+                {
+                    byte[] bytes = new byte[(int) (end - start)];
+                    if (randomAccessFile == null)
+                    {
+                        randomAccessFile = new RandomAccessFile(file, "r");
+                    }
+                    randomAccessFile.seek(start);
+                    randomAccessFile.readFully(bytes);
+                    block = new ByteArrayInputStream(bytes);
+                }
+                PathDecoder decoder = new PathDecoder();
+                for (int idx = 0; idx < entries; idx++)
+                {
+                    int comparison = decoder.read(block).compareTo(path);
+                    if (comparison == 0)
+                    {
+                        return true;
+                    }
+                    if (comparison > 0)
+                    {
+                        return false;
+                    }
+                }
+                return false;
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Could not read run " + file, e);
+            }
+        }
+
+        private synchronized void retain()
+        {
+            references++;
+        }
+
+        /**
+         * @return true if the run was deleted, being released by all
+         */
+        private synchronized boolean release()
+        {
+            if (--references == 0)
+            {
+                delete();
+            }
+            return deleted;
+        }
+
+        private synchronized boolean isDeleted()
+        {
+            return deleted;
+        }
+
+        private synchronized void delete()
+        {
+            if (deleted)
+            {
+                return;
+            }
+            deleted = true;
+            if (randomAccessFile != null)
+            {
+                try
+                {
+                    randomAccessFile.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Could not close " + file.getAbsolutePath() + " : " + e.getMessage());
+                }
+            }
+            if (file != null && !file.delete())
+            {
+                LOGGER.warn("Could not delete " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static final class RunWriter
+    {
+        private final OutputStream output;
+
+        private long position = 0;
+
+        private byte[] previous = new byte[0];
+
+        private int count = 0;
+
+        private final List<Long> restartOffsets = new ArrayList<Long>();
+
+        private final List<String> restartKeys = new ArrayList<String>();
+
+        private RunWriter(OutputStream output)
+        {
+            this.output = output;
+        }
+
+        private void write(String path) throws IOException
+        {
+            byte[] bytes = path.getBytes(UTF8);
+            int shared = 0;
+            if (count % RESTART_INTERVAL == 0)
+            {
+                restartOffsets.add(position);
+                restartKeys.add(path);
+            }
+            else
+            {
+                int max = Math.min(previous.length, bytes.length);
+                while (shared < max && previous[shared] == bytes[shared])
+                {
+                    shared++;
+                }
+            }
+            position += writeVarInt(output, shared);
+            position += writeVarInt(output, bytes.length - shared);
+            output.write(bytes, shared, bytes.length - shared);
+            position += bytes.length - shared;
+            previous = bytes;
+            count++;
+        }
+
+        private void close() throws IOException
+        {
+            output.close();
+        }
+
+        private Run toRun(byte[] data, File file)
+        {
+            long[] offsets = new long[restartOffsets.size()];
+            for (int idx = 0; idx < offsets.length; idx++)
+            {
+                offsets[idx] = restartOffsets.get(idx);
+            }
+            return new Run(data, file, position, count, offsets, restartKeys.toArray(new String[restartKeys.size()]));
+        }
+    }
+
+    private static final class PathDecoder
+    {
+        private byte[] bytes = new byte[256];
+
+        private String read(InputStream input) throws IOException
+        {
+            int shared = readVarInt(input);
+            int suffix = readVarInt(input);
+            if (shared + suffix > bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, shared + suffix));
+            }
+            int offset = shared;
+            while (offset < shared + suffix)
+            {
+                int read = input.read(bytes, offset, shared + suffix - offset);
+                if (read < 0)
+                {
+                    throw new IOException("Truncated run");
+                }
+                offset += read;
+            }
+            return new String(bytes, 0, shared + suffix, UTF8);
+        }
+    }
+
+    private static final class RunReader implements Comparable<RunReader>
+    {
+        private final Run run;
+
+        private final PathDecoder decoder = new PathDecoder();
+
+        private InputStream input;
+
+        private int remaining;
+
+        private String current;
+
+        private boolean released = false;
+
+        /**
+         * @param run
+         *            the run, retained by the iterator
+         */
+        private RunReader(Run run)
+        {
+            this.run = run;
+            this.remaining = run.count;
+        }
+
+        private boolean hasNext()
+        {
+            if (remaining > 0)
+            {
+                return true;
+            }
+            release();
+            return false;
+        }
+
+        /**
+         * Close the run, letting it be deleted if merged meanwhile
+         */
+        private void release()
+        {
+            closeInput();
+            if (!released)
+            {
+                released = true;
+                remaining = 0;
+                run.release();
+            }
+        }
+
+        private String next()
+        {
+            try
+            {
+                if (input == null)
+                {
+                    input = run.open();
+                }
+                current = decoder.read(input);
+                remaining--;
+                return current;
+            }
+            catch (IOException e)
+            {
+                closeInput();
+                throw new RuntimeException("Could not read run " + run.file, e);
+            }
+        }
+
+        private void closeInput()
+        {
+            if (input != null)
+            {
+                try
+                {
+                    input.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Could not close run " + run.file + " : " + e.getMessage());
+                }
+                input = null;
+            }
+        }
+
+        @Override
+        public int compareTo(RunReader other)
+        {
+            return current.compareTo(other.current);
+        }
+    }
+
+    /**
+     * Sorted iteration over several runs, skipping duplicates
+     */
+    private static final class MergeIterator implements PathIterator
+    {
+        private final PriorityQueue<RunReader> readers;
+
+        private String last;
+
+        private String next;
+
+        private MergeIterator(List<Run> runs)
+        {
+            readers = new PriorityQueue<RunReader>(Math.max(1, runs.size()));
+            for (Run run : runs)
+            {
+                run.retain();
+                RunReader reader = new RunReader(run);
+                if (reader.hasNext())
+                {
+                    reader.next();
+                    readers.add(reader);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next == null && !readers.isEmpty())
+            {
+                RunReader reader = readers.poll();
+                String path = reader.current;
+                if (reader.hasNext())
+                {
+                    reader.next();
+                    readers.add(reader);
+                }
+                if (!path.equals(last))
+                {
+                    next = path;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            for (RunReader reader : readers)
+            {
+                reader.release();
+            }
+            readers.clear();
+            next = null;
+        }
+    }
+
+    /**
+     * Iteration over several runs, one after the other
+     */
+    private static final class RunsIterator implements PathIterator
+    {
+        private final List<Run> runs;
+
+        private int runIndex = 0;
+
+        private RunReader reader;
+
+        private RunsIterator(List<Run> runs)
+        {
+            this.runs = runs;
+            for (Run run : runs)
+            {
+                run.retain();
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (reader == null || !reader.hasNext())
+            {
+                if (runIndex >= runs.size())
+                {
+                    reader = null;
+                    return false;
+                }
+                reader = new RunReader(runs.get(runIndex++));
+            }
+            return true;
+        }
+
+        @Override
+        public String next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return reader.next();
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            if (reader != null)
+            {
+                reader.release();
+                reader = null;
+            }
+            while (runIndex < runs.size())
+            {
+                runs.get(runIndex++).release();
+            }
+        }
+    }
+}
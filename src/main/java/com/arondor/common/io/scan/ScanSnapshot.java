@@ -0,0 +1,480 @@
+package com.arondor.common.io.scan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Memory-mapped snapshot of a previous scan : for each listed folder, its
+ * modification time and its children.
+ *
+ * The file is never deserialized : folders are looked up in place, through an
+ * index sorted by path hash, and their children are only decoded when a
+ * folder is replayed.
+ *
+ * <pre>
+ * header  : int magic, int version, int folderCount, int reserved, long indexOffset, long reserved
+ * folder  : int recordLength, int pathLength, byte path[], long lastModified, int childCount, child[]
+ * child   : byte flags, long size, long lastModified, short nameLength, byte name[]
+ * index   : folderCount * (long pathHash, long folderOffset), sorted by pathHash
+ * </pre>
+ *
+ * Paths are UTF-8 encoded, all numbers are big-endian.
+ *
+ * The file is mapped in segments of 1GB, so that snapshots may exceed 2GB ;
+ * the few numbers spanning two segments are read byte per byte. The segments
+ * are unmapped on close, so that the snapshot can then be replaced.
+ */
+final class ScanSnapshot implements Closeable
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanSnapshot.class);
+
+    static final int MAGIC = 0x41534e50;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    static final int FLAG_DIRECTORY = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int SEGMENT_SHIFT = 30;
+
+    private final File file;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final int segmentShift;
+
+    private final long segmentMask;
+
+    private final MappedByteBuffer[] segments;
+
+    private final int folderCount;
+
+    private final long indexOffset;
+
+    /**
+     * Reads are shared, unmapping the segments is exclusive : reading an
+     * unmapped segment would crash the JVM
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private boolean closed = false;
+
+    private ScanSnapshot(File file, int segmentShift) throws IOException
+    {
+        this.file = file;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((size + segmentMask) >>> segmentShift)];
+            for (int idx = 0; idx < segments.length; idx++)
+            {
+                long start = (long) idx << segmentShift;
+                segments[idx] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(segmentMask + 1, size - start));
+            }
+            if (size < HEADER_SIZE || getInt(0) != MAGIC || getInt(4) != VERSION)
+            {
+                unmapSegments();
+                throw new IOException("Invalid snapshot : " + file.getAbsolutePath());
+            }
+            this.folderCount = getInt(8);
+            this.indexOffset = getLong(16);
+        }
+        catch (IOException e)
+        {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map an existing snapshot
+     *
+     * @param file
+     *            the snapshot file
+     * @return the snapshot, or null if the file does not exist
+     * @throws IOException
+     *             if the file is not a valid snapshot
+     */
+    static ScanSnapshot open(File file) throws IOException
+    {
+        return open(file, SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift
+     *            the log2 of the size of the segments mapped
+     */
+    static ScanSnapshot open(File file, int segmentShift) throws IOException
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+        return new ScanSnapshot(file, segmentShift);
+    }
+
+    static long hash(byte[] bytes)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes)
+        {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private byte getByte(long position)
+    {
+        return segments[(int) (position >>> segmentShift)].get((int) (position & segmentMask));
+    }
+
+    /**
+     * @return a big-endian number of 2, 4 or 8 bytes
+     */
+    private long getNumber(long position, int length)
+    {
+        MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+        int index = (int) (position & segmentMask);
+        if (index + length <= segment.limit())
+        {
+            switch (length)
+            {
+            case 2:
+                return segment.getShort(index);
+            case 4:
+                return segment.getInt(index);
+            default:
+                return segment.getLong(index);
+            }
+        }
+        long value = 0;
+        for (int idx = 0; idx < length; idx++)
+        {
+            value = (value << 8) | (getByte(position + idx) & 0xff);
+        }
+        return value;
+    }
+
+    private int getInt(long position)
+    {
+        return (int) getNumber(position, 4);
+    }
+
+    private long getLong(long position)
+    {
+        return getNumber(position, 8);
+    }
+
+    private void getBytes(long position, byte[] target)
+    {
+        MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+        int index = (int) (position & segmentMask);
+        if (index + target.length <= segment.limit())
+        {
+            for (int idx = 0; idx < target.length; idx++)
+            {
+                target[idx] = segment.get(index + idx);
+            }
+            return;
+        }
+        for (int idx = 0; idx < target.length; idx++)
+        {
+            target[idx] = getByte(position + idx);
+        }
+    }
+
+    private void lock()
+    {
+        closeLock.readLock().lock();
+        if (closed)
+        {
+            closeLock.readLock().unlock();
+            throw new IllegalStateException("Snapshot closed : " + file.getAbsolutePath());
+        }
+    }
+
+    private void unlock()
+    {
+        closeLock.readLock().unlock();
+    }
+
+    int getFolderCount()
+    {
+        return folderCount;
+    }
+
+    /**
+     * Look a folder up
+     *
+     * @param path
+     *            the absolute path of the folder
+     * @return the folder, or null if it was not listed in the snapshot
+     */
+    Folder findFolder(String path)
+    {
+        byte[] key = path.getBytes(UTF8);
+        long hash = hash(key);
+        lock();
+        try
+        {
+            int low = 0;
+            int high = folderCount - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                long midHash = getLong(indexOffset + mid * 16L);
+                if (midHash < hash)
+                {
+                    low = mid + 1;
+                }
+                else if (midHash > hash)
+                {
+                    high = mid - 1;
+                }
+                else
+                {
+                    /*
+                     * Rewind to the first entry of this hash, then check paths
+                     */
+                    while (mid > 0 && getLong(indexOffset + (mid - 1) * 16L) == hash)
+                    {
+                        mid--;
+                    }
+                    for (; mid < folderCount && getLong(indexOffset + mid * 16L) == hash; mid++)
+                    {
+                        long offset = getLong(indexOffset + mid * 16L + 8);
+                        if (pathEquals(offset, key))
+                        {
+                            return new Folder(offset, key.length);
+                        }
+                    }
+                    return null;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    private boolean pathEquals(long offset, byte[] key)
+    {
+        if (getInt(offset + 4) != key.length)
+        {
+            return false;
+        }
+        byte[] path = new byte[key.length];
+        getBytes(offset + 8, path);
+        return Arrays.equals(path, key);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closeLock.writeLock().lock();
+        try
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            unmapSegments();
+            randomAccessFile.close();
+        }
+        finally
+        {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    private void unmapSegments()
+    {
+        for (int idx = 0; idx < segments.length; idx++)
+        {
+            if (segments[idx] != null)
+            {
+                unmap(segments[idx]);
+                segments[idx] = null;
+            }
+        }
+    }
+
+    /**
+     * Unmap a buffer now instead of when collected, through the cleaner of the
+     * JDK, if reachable
+     */
+    private static void unmap(MappedByteBuffer buffer)
+    {
+        try
+        {
+            try
+            {
+                /*
+                 * Java 9 and above
+                 */
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            }
+            catch (NoSuchMethodException e)
+            {
+                /*
+                 * Java 8
+                 */
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            LOGGER.warn("Could not unmap snapshot, left to the garbage collector : " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScanSnapshot " + file.getAbsolutePath() + ", folders=" + folderCount;
+    }
+
+    /**
+     * One folder of the snapshot, read in place
+     */
+    final class Folder
+    {
+        private final long offset;
+
+        private final long childrenOffset;
+
+        private Folder(long offset, int pathLength)
+        {
+            this.offset = offset;
+            this.childrenOffset = offset + 8 + pathLength + 8 + 4;
+        }
+
+        long getLastModified()
+        {
+            lock();
+            try
+            {
+                return getLong(childrenOffset - 12);
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        int getChildCount()
+        {
+            lock();
+            try
+            {
+                return getInt(childrenOffset - 4);
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        /**
+         * @return the raw record, to be copied as is in a new snapshot
+         */
+        ByteBuffer getRecord()
+        {
+            lock();
+            try
+            {
+                byte[] record = new byte[getInt(offset)];
+                getBytes(offset, record);
+                return ByteBuffer.wrap(record);
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        /**
+         * Decode the children
+         *
+         * @param folder
+         *            the folder the children are resolved against
+         * @return the children, with the attributes stored in the snapshot
+         */
+        List<ScanEntry> readChildren(File folder)
+        {
+            lock();
+            try
+            {
+                int count = getInt(childrenOffset - 4);
+                List<ScanEntry> children = new ArrayList<ScanEntry>(count);
+                long position = childrenOffset;
+                for (int idx = 0; idx < count; idx++)
+                {
+                    byte flags = getByte(position);
+                    long size = getLong(position + 1);
+                    long lastModified = getLong(position + 9);
+                    int nameLength = (int) getNumber(position + 17, 2) & 0xffff;
+                    byte[] name = new byte[nameLength];
+                    getBytes(position + 19, name);
+                    position += 19 + nameLength;
+                    children.add(new ScanEntry(new File(folder, new String(name, UTF8)),
+                            (flags & FLAG_DIRECTORY) != 0, size, lastModified));
+                }
+                return children;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        Map<String, ScanEntry> readChildrenByName(File folder)
+        {
+            Map<String, ScanEntry> children = new HashMap<String, ScanEntry>();
+            for (ScanEntry child : readChildren(folder))
+            {
+                children.put(child.getName(), child);
+            }
+            return children;
+        }
+    }
+}
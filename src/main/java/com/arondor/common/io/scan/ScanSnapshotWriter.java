@@ -0,0 +1,219 @@
+package com.arondor.common.io.scan;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes a {@link ScanSnapshot} while scanning : folder records are appended
+ * as soon as listed, from any scanning thread, and the index is written when
+ * the scan is committed. The new snapshot replaces the previous one
+ * atomically.
+ */
+final class ScanSnapshotWriter
+{
+    private static final Logger LOGGER = Logger.getLogger(ScanSnapshotWriter.class);
+
+    private final File file;
+
+    private final File temporaryFile;
+
+    private final DataOutputStream output;
+
+    private long position = ScanSnapshot.HEADER_SIZE;
+
+    private long[] hashes = new long[1024];
+
+    private long[] offsets = new long[1024];
+
+    private int folderCount = 0;
+
+    ScanSnapshotWriter(File file) throws IOException
+    {
+        this.file = file;
+        this.temporaryFile = new File(file.getPath() + ".tmp");
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile), 65536));
+        output.write(new byte[ScanSnapshot.HEADER_SIZE]);
+    }
+
+    /**
+     * Append a folder
+     *
+     * @param path
+     *            the absolute path of the folder
+     * @param lastModified
+     *            the modification time of the folder, read before listing it
+     * @param children
+     *            the children, with their attributes read
+     */
+    void writeFolder(String path, long lastModified, List<ScanEntry> children) throws IOException
+    {
+        byte[] pathBytes = path.getBytes(ScanSnapshot.UTF8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + children.size() * 40);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(0);
+        record.writeInt(pathBytes.length);
+        record.write(pathBytes);
+        record.writeLong(lastModified);
+        record.writeInt(children.size());
+        for (ScanEntry child : children)
+        {
+            byte[] name = child.getName().getBytes(ScanSnapshot.UTF8);
+            record.writeByte(child.isDirectory() ? ScanSnapshot.FLAG_DIRECTORY : 0);
+            record.writeLong(child.getSize());
+            record.writeLong(child.getLastModified());
+            record.writeShort(name.length);
+            record.write(name);
+        }
+        byte[] recordBytes = bytes.toByteArray();
+        ByteBuffer.wrap(recordBytes).putInt(0, recordBytes.length);
+        append(ScanSnapshot.hash(pathBytes), recordBytes);
+    }
+
+    /**
+     * Append a folder record unchanged since the previous snapshot
+     *
+     * @param path
+     *            the absolute path of the folder
+     * @param record
+     *            the raw record
+     */
+    void copyFolder(String path, ByteBuffer record) throws IOException
+    {
+        byte[] recordBytes = new byte[record.remaining()];
+        record.get(recordBytes);
+        append(ScanSnapshot.hash(path.getBytes(ScanSnapshot.UTF8)), recordBytes);
+    }
+
+    private synchronized void append(long hash, byte[] record) throws IOException
+    {
+        if (folderCount == hashes.length)
+        {
+            hashes = Arrays.copyOf(hashes, folderCount * 2);
+            offsets = Arrays.copyOf(offsets, folderCount * 2);
+        }
+        hashes[folderCount] = hash;
+        offsets[folderCount] = position;
+        folderCount++;
+        output.write(record);
+        position += record.length;
+    }
+
+    /**
+     * Write the index and replace the previous snapshot
+     */
+    synchronized void commit() throws IOException
+    {
+        sortIndex();
+        long indexOffset = position;
+        for (int idx = 0; idx < folderCount; idx++)
+        {
+            output.writeLong(hashes[idx]);
+            output.writeLong(offsets[idx]);
+        }
+        output.close();
+        RandomAccessFile header = new RandomAccessFile(temporaryFile, "rw");
+        try
+        {
+            header.writeInt(ScanSnapshot.MAGIC);
+            header.writeInt(ScanSnapshot.VERSION);
+            header.writeInt(folderCount);
+            header.writeInt(0);
+            header.writeLong(indexOffset);
+        }
+        finally
+        {
+            header.close();
+        }
+        try
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LOGGER.info("Wrote snapshot " + file.getAbsolutePath() + ", folders=" + folderCount + ", size="
+                + (indexOffset + folderCount * 16));
+    }
+
+    /**
+     * Drop the snapshot being written, keeping the previous one
+     */
+    synchronized void abort()
+    {
+        try
+        {
+            output.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not close " + temporaryFile.getAbsolutePath(), e);
+        }
+        if (!temporaryFile.delete())
+        {
+            LOGGER.warn("Could not delete " + temporaryFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Heap sort of the index by hash, keeping offsets aligned
+     */
+    private void sortIndex()
+    {
+        for (int idx = folderCount / 2 - 1; idx >= 0; idx--)
+        {
+            siftDown(idx, folderCount);
+        }
+        for (int end = folderCount - 1; end > 0; end--)
+        {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int root, int end)
+    {
+        while (true)
+        {
+            int child = root * 2 + 1;
+            if (child >= end)
+            {
+                return;
+            }
+            if (child + 1 < end && hashes[child + 1] > hashes[child])
+            {
+                child++;
+            }
+            if (hashes[root] >= hashes[child])
+            {
+                return;
+            }
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        long hash = hashes[i];
+        hashes[i] = hashes[j];
+        hashes[j] = hash;
+        long offset = offsets[i];
+        offsets[i] = offsets[j];
+        offsets[j] = offset;
+    }
+}
@@ -0,0 +1,139 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+
+/**
+ * {@link DirectoryStream} based traversal engine, for folders of millions of
+ * entries.
+ * 
+ * Children are visited as they are read, instead of being gathered in an
+ * array first. Sorted listings hold up to {@link #RUN_SIZE} names ; past
+ * that, names go through a {@link ScanResultSet}, an external merge sort
+ * spilling to the temporary folder beyond {@link #MEMORY_BUDGET}.
+ * 
+ * The sorted listing replaces, for this engine, the listFiles() and sort by
+ * absolute path of the former DirectoryScanner.doListOrderedFiles(), in the
+ * same order.
+ */
+class StreamDirectoryLister implements DirectoryLister
+{
+    private static final Logger LOGGER = Logger.getLogger(StreamDirectoryLister.class);
+
+    static final int RUN_SIZE = 65536;
+
+    static final long MEMORY_BUDGET = 8L * 1024 * 1024;
+
+    private final int runSize;
+
+    private final File spillFolder;
+
+    StreamDirectoryLister()
+    {
+        this(RUN_SIZE, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    StreamDirectoryLister(int runSize, File spillFolder)
+    {
+        this.runSize = runSize;
+        this.spillFolder = spillFolder;
+    }
+
+    @Override
+    public void listChildren(File folder, boolean sorted, EntryVisitor visitor)
+    {
+        DirectoryStream<Path> stream;
+        try
+        {
+            stream = Files.newDirectoryStream(folder.toPath());
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Could not list folder : " + folder.getAbsolutePath(), e);
+            return;
+        }
+        try
+        {
+            if (sorted)
+            {
+                listSorted(folder, stream.iterator(), visitor);
+            }
+            else
+            {
+                for (Path child : stream)
+                {
+                    visitor.visit(new ScanEntry(child.toFile()));
+                }
+            }
+        }
+        catch (DirectoryIteratorException e)
+        {
+            LOGGER.error("Could not list folder : " + folder.getAbsolutePath(), e.getCause());
+        }
+        finally
+        {
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Could not close listing of " + folder.getAbsolutePath() + " : " + e.getMessage());
+            }
+        }
+    }
+
+    private void listSorted(File folder, Iterator<Path> children, EntryVisitor visitor)
+    {
+        String[] names = new String[Math.min(runSize, 1024)];
+        int count = 0;
+        while (children.hasNext() && count < runSize)
+        {
+            if (count == names.length)
+            {
+                names = Arrays.copyOf(names, Math.min(runSize, names.length * 2));
+            }
+            names[count++] = children.next().getFileName().toString();
+        }
+        if (!children.hasNext())
+        {
+            Arrays.sort(names, 0, count);
+            for (int idx = 0; idx < count; idx++)
+            {
+                visitor.visit(new ScanEntry(new File(folder, names[idx])));
+            }
+            return;
+        }
+        LOGGER.info("Sorting large folder " + folder.getAbsolutePath() + " externally");
+        ScanResultSet sortedNames = new ScanResultSet(MEMORY_BUDGET, spillFolder, runSize);
+        try
+        {
+            for (int idx = 0; idx < count; idx++)
+            {
+                sortedNames.add(names[idx]);
+            }
+            names = null;
+            while (children.hasNext())
+            {
+                sortedNames.add(children.next().getFileName().toString());
+            }
+            Iterator<String> iterator = sortedNames.sortedIterator();
+            while (iterator.hasNext())
+            {
+                visitor.visit(new ScanEntry(new File(folder, iterator.next())));
+            }
+        }
+        finally
+        {
+            sortedNames.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.arondor.common.io.scan;
+
+/**
+ * Traversal engines available to {@link DirectoryScanner}
+ */
+public enum TraversalEngine
+{
+    /**
+     * {@link java.io.File#listFiles()} : one extra stat per child to know its
+     * type
+     */
+    FILE,
+
+    /**
+     * {@link java.nio.file} : the child type is read with its size and
+     * modification time in a single call, or comes with the listing on
+     * Windows ; no cheaper than FILE on POSIX systems when only the type is
+     * needed
+     */
+    NIO,
+
+    /**
+     * {@link java.nio.file.DirectoryStream} : children are visited as they are
+     * read, and sorted externally past a bound, for huge folders
+     */
+    STREAM;
+
+    DirectoryLister createLister()
+    {
+        switch (this)
+        {
+        case NIO:
+            return new NioDirectoryLister();
+        case STREAM:
+            return new StreamDirectoryLister();
+        default:
+            return new FileDirectoryLister();
+        }
+    }
+}
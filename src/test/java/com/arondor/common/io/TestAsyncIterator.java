@@ -0,0 +1,469 @@
+package com.arondor.common.io;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class TestAsyncIterator
+{
+    private static final int PRODUCERS = 4;
+
+    private static final int OBJECTS_PER_PRODUCER = 50000;
+
+    /**
+     * Each async thread adds its own range of integers
+     */
+    private static final class RangeIterator extends AsyncIterator<Integer>
+    {
+        private final AtomicInteger nextProducer = new AtomicInteger();
+
+        @Override
+        protected boolean doScanOneItem()
+        {
+            int producer = nextProducer.getAndIncrement();
+            for (int idx = 0; idx < OBJECTS_PER_PRODUCER; idx++)
+            {
+                addObject(producer * OBJECTS_PER_PRODUCER + idx);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Each async thread adds its own range of integers, in batches
+     */
+    private static final class BatchRangeIterator extends AsyncIterator<Integer>
+    {
+        private final AtomicInteger nextProducer = new AtomicInteger();
+
+        @Override
+        protected boolean doScanOneItem()
+        {
+            int producer = nextProducer.getAndIncrement();
+            List<Integer> batch = new ArrayList<Integer>();
+            for (int idx = 0; idx < OBJECTS_PER_PRODUCER; idx++)
+            {
+                batch.add(producer * OBJECTS_PER_PRODUCER + idx);
+                if (batch.size() == 100)
+                {
+                    addObjects(batch);
+                    batch.clear();
+                }
+            }
+            addObjects(batch);
+            return false;
+        }
+    }
+
+    @Test
+    public void testRingBufferQueue()
+    {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<Integer>(3);
+        Assert.assertEquals(4, queue.getCapacity());
+        for (int idx = 0; idx < 4; idx++)
+        {
+            Assert.assertTrue(queue.offer(idx));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(Integer.valueOf(0), queue.poll());
+        Assert.assertTrue(queue.offer(4));
+        for (int idx = 1; idx <= 4; idx++)
+        {
+            Assert.assertEquals(Integer.valueOf(idx), queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+
+        List<Integer> objects = new ArrayList<Integer>();
+        for (int idx = 0; idx < 6; idx++)
+        {
+            objects.add(idx);
+        }
+        Assert.assertEquals(4, queue.offerAll(objects, 1));
+        Assert.assertEquals(0, queue.offerAll(objects, 5));
+        List<Integer> drained = new ArrayList<Integer>();
+        Assert.assertEquals(3, queue.drainTo(drained, 3));
+        Assert.assertEquals("[1, 2, 3]", drained.toString());
+        Assert.assertEquals(1, queue.offerAll(objects, 5));
+        Assert.assertEquals(2, queue.drainTo(drained, 10));
+        Assert.assertEquals("[1, 2, 3, 4, 5]", drained.toString());
+        Assert.assertEquals(0, queue.drainTo(drained, 10));
+    }
+
+    @Test
+    public void testQueueSettingsBeforeIterating()
+    {
+        RangeIterator iterator = new RangeIterator();
+        iterator.setAsync(true);
+        iterator.setQueueLimit(100);
+        Assert.assertEquals(0, iterator.getQueueCapacity());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(128, iterator.getQueueCapacity());
+        try
+        {
+            iterator.setQueueLimit(10);
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertEquals(100, iterator.getQueueLimit());
+        }
+        try
+        {
+            iterator.setRandomize(true);
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertFalse(iterator.isRandomize());
+        }
+        iterator.interruptParsing();
+    }
+
+    @Test(timeout = 60000)
+    public void testBatches()
+    {
+        BatchRangeIterator iterator = new BatchRangeIterator();
+        iterator.setAsync(true);
+        iterator.setAsyncThreads(PRODUCERS);
+        iterator.setQueueLimit(256);
+
+        BitSet seen = new BitSet();
+        int batches = 0;
+        while (true)
+        {
+            List<Integer> batch = iterator.nextBatch(500);
+            if (batch.isEmpty())
+            {
+                break;
+            }
+            Assert.assertTrue(batch.size() <= 500);
+            batches++;
+            for (int value : batch)
+            {
+                Assert.assertFalse(seen.get(value));
+                seen.set(value);
+            }
+        }
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, seen.cardinality());
+        Assert.assertTrue(batches >= PRODUCERS * OBJECTS_PER_PRODUCER / 500);
+        Assert.assertEquals(0, iterator.drainTo(new ArrayList<Integer>(), 10, 10, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(iterator.nextBatch(0).isEmpty());
+        Assert.assertTrue(iterator.nextBatch(-1).isEmpty());
+    }
+
+    private List<Integer> iterateRandomized(Long seed, int queueLimit)
+    {
+        RangeIterator iterator = new RangeIterator();
+        iterator.setRandomize(true);
+        iterator.setRandomSeed(seed);
+        iterator.setQueueLimit(queueLimit);
+        List<Integer> values = new ArrayList<Integer>();
+        for (int value : iterator)
+        {
+            values.add(value);
+        }
+        return values;
+    }
+
+    @Test
+    public void testRandomized()
+    {
+        List<Integer> values = iterateRandomized(42L, 0);
+        Assert.assertEquals(OBJECTS_PER_PRODUCER, values.size());
+        Assert.assertEquals(OBJECTS_PER_PRODUCER, new HashSet<Integer>(values).size());
+        Assert.assertEquals(values, iterateRandomized(42L, 0));
+        Assert.assertFalse(values.equals(iterateRandomized(43L, 0)));
+
+        int inOrder = 0;
+        for (int idx = 0; idx < 10; idx++)
+        {
+            if (values.get(idx) == idx)
+            {
+                inOrder++;
+            }
+        }
+        Assert.assertTrue(inOrder < 10);
+    }
+
+    @Test
+    public void testRandomObjectQueueLimit()
+    {
+        RandomObjectQueue<Integer> queue = new RandomObjectQueue<Integer>(3, new Random(1));
+        List<Integer> objects = new ArrayList<Integer>();
+        for (int idx = 0; idx < 5; idx++)
+        {
+            objects.add(idx);
+        }
+        Assert.assertEquals(3, queue.offerAll(objects, 0));
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertNotNull(queue.poll());
+        Assert.assertTrue(queue.offer(3));
+        List<Integer> drained = new ArrayList<Integer>();
+        Assert.assertEquals(3, queue.drainTo(drained, 10));
+        Assert.assertNull(queue.poll());
+    }
+
+    private int countAsync(Executor executor)
+    {
+        RangeIterator iterator = new RangeIterator();
+        iterator.setAsync(true);
+        iterator.setAsyncThreads(PRODUCERS);
+        iterator.setQueueLimit(16);
+        iterator.setExecutor(executor);
+        int count = 0;
+        while (iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test(timeout = 60000)
+    public void testExecutor()
+    {
+        final AtomicInteger tasks = new AtomicInteger();
+        int count = countAsync(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                tasks.incrementAndGet();
+                AsyncExecutors.getSharedExecutor().execute(command);
+            }
+        });
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, count);
+        Assert.assertEquals(PRODUCERS, tasks.get());
+
+        Executor virtualThreads = AsyncExecutors.newVirtualThreadExecutor();
+        Assert.assertEquals(AsyncExecutors.isVirtualThreadSupported(), virtualThreads != null);
+        if (virtualThreads != null)
+        {
+            Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, countAsync(virtualThreads));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testManyOpenIterators()
+    {
+        /*
+         * Consumed in turn : every producer must be running at once
+         */
+        List<RangeIterator> iterators = new ArrayList<RangeIterator>();
+        for (int idx = 0; idx < 300; idx++)
+        {
+            RangeIterator iterator = new RangeIterator();
+            iterator.setAsync(true);
+            iterator.setAsyncThreads(1);
+            iterator.setQueueLimit(16);
+            Assert.assertTrue(iterator.hasNext());
+            iterators.add(iterator);
+        }
+        for (int round = 0; round < 64; round++)
+        {
+            for (RangeIterator iterator : iterators)
+            {
+                Assert.assertEquals(round, iterator.next().intValue());
+            }
+        }
+        for (RangeIterator iterator : iterators)
+        {
+            iterator.interruptParsing();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testBoundedExecutor() throws InterruptedException
+    {
+        ThreadPoolExecutor executor = AsyncExecutors.newBoundedExecutor(1);
+        try
+        {
+            final RangeIterator first = new RangeIterator();
+            first.setAsync(true);
+            first.setAsyncThreads(PRODUCERS);
+            first.setQueueLimit(16);
+            first.setExecutor(executor);
+            Assert.assertTrue(first.hasNext());
+
+            /*
+             * The producers of the second iterator are queued until the
+             * first one is consumed
+             */
+            final RangeIterator second = new RangeIterator();
+            second.setAsync(true);
+            second.setAsyncThreads(PRODUCERS);
+            second.setQueueLimit(16);
+            second.setExecutor(executor);
+            final AtomicInteger secondCount = new AtomicInteger();
+            Thread consumer = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    while (second.hasNext())
+                    {
+                        second.next();
+                        secondCount.incrementAndGet();
+                    }
+                }
+            };
+            consumer.start();
+
+            int count = 0;
+            while (first.hasNext())
+            {
+                first.next();
+                count++;
+            }
+            consumer.join();
+            Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, count);
+            Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, secondCount.get());
+            Assert.assertEquals(1, executor.getLargestPoolSize());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRejectedExecutor()
+    {
+        int count = countAsync(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                throw new RejectedExecutionException("Shut down");
+            }
+        });
+        Assert.assertEquals(0, count);
+    }
+
+    @Test(timeout = 60000)
+    public void testParallelStream()
+    {
+        RangeIterator iterator = new RangeIterator();
+        iterator.setAsync(true);
+        iterator.setAsyncThreads(PRODUCERS);
+        iterator.setQueueLimit(256);
+
+        List<Integer> values = iterator.parallelStream().collect(Collectors.toList());
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, values.size());
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, new HashSet<Integer>(values).size());
+        Assert.assertEquals(0, iterator.spliterator().estimateSize());
+        Assert.assertNull(iterator.spliterator().trySplit());
+    }
+
+    @Test
+    public void testOrderedStream()
+    {
+        RangeIterator iterator = new RangeIterator();
+        List<Integer> values = iterator.parallelStream().collect(Collectors.toList());
+        Assert.assertEquals(OBJECTS_PER_PRODUCER, values.size());
+        for (int idx = 0; idx < OBJECTS_PER_PRODUCER; idx++)
+        {
+            Assert.assertEquals(idx, values.get(idx).intValue());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testHasNextAndNextOnOtherThreads() throws InterruptedException
+    {
+        final RangeIterator iterator = new RangeIterator();
+        iterator.setAsync(true);
+        iterator.setQueueLimit(16);
+
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertTrue(iterator.getQueueSize() > 0);
+        final List<Integer> values = new ArrayList<Integer>();
+        Thread consumer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                values.add(iterator.next());
+            }
+        };
+        consumer.start();
+        consumer.join();
+        Assert.assertEquals(Integer.valueOf(0), values.get(0));
+        int count = 1;
+        while (iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(OBJECTS_PER_PRODUCER, count);
+        try
+        {
+            iterator.next();
+            Assert.fail();
+        }
+        catch (NoSuchElementException e)
+        {
+            Assert.assertEquals(OBJECTS_PER_PRODUCER, iterator.getTotalObjectsIterated());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testMultipleProducersAndConsumers() throws InterruptedException
+    {
+        final RangeIterator iterator = new RangeIterator();
+        iterator.setAsync(true);
+        iterator.setAsyncThreads(PRODUCERS);
+        iterator.setQueueLimit(16);
+
+        final BitSet seen = new BitSet();
+        final AtomicInteger duplicates = new AtomicInteger();
+        List<Thread> consumers = new ArrayList<Thread>();
+        for (int consumer = 0; consumer < 3; consumer++)
+        {
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    while (iterator.hasNext())
+                    {
+                        int value = iterator.next();
+                        synchronized (seen)
+                        {
+                            if (seen.get(value))
+                            {
+                                duplicates.incrementAndGet();
+                            }
+                            seen.set(value);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            consumers.add(thread);
+        }
+        for (Thread thread : consumers)
+        {
+            thread.join();
+        }
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, seen.cardinality());
+        Assert.assertEquals(PRODUCERS * OBJECTS_PER_PRODUCER, iterator.getTotalObjectsIterated());
+        Assert.assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,113 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.arondor.common.io.RandomAccessZipEntry;
+
+import junit.framework.Assert;
+
+public class TestArchiveScan
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    private void addEntry(ZipOutputStream output, String name, String content) throws IOException
+    {
+        output.putNextEntry(new ZipEntry(name));
+        output.write(content.getBytes("UTF-8"));
+        output.closeEntry();
+    }
+
+    private void createTree() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        new File(root, "plain.txt").createNewFile();
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(new File(root, "archive.zip")));
+        try
+        {
+            addEntry(output, "docs/a.txt", "0123456789");
+            addEntry(output, "docs/sub/b.txt", "b");
+            addEntry(output, "c.pcl", "c");
+            addEntry(output, "./d.txt", "d");
+            addEntry(output, "../escape.txt", "e");
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private Set<String> scan(String filter, TraversalEngine traversalEngine)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(traversalEngine);
+        scanner.setScanArchives(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/" + filter);
+        scanner.setFilters(filters);
+        Set<String> result = new TreeSet<String>();
+        for (String file : scanner)
+        {
+            result.add(file.substring(root.getAbsolutePath().length() + 1).replace('\\', '/'));
+        }
+        return result;
+    }
+
+    @Test
+    public void testScanArchive() throws IOException
+    {
+        createTree();
+        for (TraversalEngine traversalEngine : TraversalEngine.values())
+        {
+            Assert.assertEquals("[archive.zip/d.txt, archive.zip/docs/a.txt, archive.zip/docs/sub/b.txt, plain.txt]",
+                    scan("**/*.txt", traversalEngine).toString());
+            Assert.assertEquals("[archive.zip/docs/a.txt]", scan("*.zip/docs/*.txt", traversalEngine).toString());
+        }
+    }
+
+    @Test
+    public void testOpenEntry() throws IOException
+    {
+        createTree();
+        RandomAccessZipEntry entry = ArchiveEntries.open(new File(root, "archive.zip/docs/a.txt").getAbsolutePath());
+        try
+        {
+            Assert.assertEquals(10, entry.length());
+            entry.seek(8);
+            Assert.assertEquals('8', entry.read());
+            entry.seek(2);
+            byte[] bytes = new byte[3];
+            Assert.assertEquals(3, entry.read(bytes, 0, 3));
+            Assert.assertEquals("234", new String(bytes, "UTF-8"));
+            Assert.assertEquals(5, entry.getFilePointer());
+        }
+        finally
+        {
+            entry.close();
+        }
+        entry = ArchiveEntries.open(new File(root, "archive.zip/d.txt").getAbsolutePath());
+        try
+        {
+            Assert.assertEquals('d', entry.read());
+            Assert.assertEquals(-1, entry.read());
+        }
+        finally
+        {
+            entry.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestCheckpointScan
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createTree() throws IOException
+    {
+        File root = temporaryFolder.newFolder("root");
+        for (int folder = 0; folder < 4; folder++)
+        {
+            File sub = new File(root, "d" + folder + "/e");
+            sub.mkdirs();
+            for (int file = 0; file < 5; file++)
+            {
+                new File(sub.getParentFile(), file + ".txt").createNewFile();
+                new File(sub, file + ".txt").createNewFile();
+            }
+        }
+        return root;
+    }
+
+    private DirectoryScanner createScanner(File root, File checkpointFile)
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setCheckpointFile(checkpointFile);
+        scanner.setCheckpointInterval(0);
+        scanner.setAsync(true);
+        scanner.setQueueLimit(1);
+        scanner.setQueueLimitDelay(10);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        return scanner;
+    }
+
+    @Test(timeout = 30000)
+    public void testResume() throws IOException
+    {
+        File root = createTree();
+        File checkpointFile = new File(temporaryFolder.getRoot(), "scan.checkpoint");
+
+        Set<String> result = new TreeSet<String>();
+        DirectoryScanner scanner = createScanner(root, checkpointFile);
+        for (int idx = 0; idx < 12; idx++)
+        {
+            Assert.assertTrue(scanner.hasNext());
+            result.add(scanner.next());
+        }
+        scanner.interruptParsing();
+        while (scanner.hasNext())
+        {
+            result.add(scanner.next());
+        }
+        Assert.assertTrue(result.size() < 40);
+        Assert.assertTrue(checkpointFile.exists());
+
+        int resumed = 0;
+        scanner = createScanner(root, checkpointFile);
+        for (String file : scanner)
+        {
+            result.add(file);
+            resumed++;
+        }
+        Assert.assertEquals(40, result.size());
+        Assert.assertTrue(resumed < 40);
+        Assert.assertFalse(checkpointFile.exists());
+    }
+}
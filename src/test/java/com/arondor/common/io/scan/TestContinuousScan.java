@@ -0,0 +1,61 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestContinuousScan
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test(timeout = 30000)
+    public void testContinuousScan() throws IOException
+    {
+        File root = temporaryFolder.newFolder("root");
+        new File(root, "a").mkdirs();
+        new File(root, "a/1.txt").createNewFile();
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.setAsync(true);
+        scanner.setContinuous(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+
+        Assert.assertTrue(scanner.hasNext());
+        Assert.assertTrue(scanner.next().endsWith("/a/1.txt"));
+
+        new File(root, "a/2.pdf").createNewFile();
+        new File(root, "a/3.txt").createNewFile();
+        new File(root, "b/c").mkdirs();
+        new File(root, "b/c/4.txt").createNewFile();
+
+        List<String> result = new ArrayList<String>();
+        while (result.size() < 2)
+        {
+            Assert.assertTrue(scanner.hasNext());
+            String file = scanner.next();
+            if (!result.contains(file))
+            {
+                result.add(file);
+            }
+        }
+        Assert.assertTrue(result.contains(new File(root, "a/3.txt").getAbsolutePath()));
+        Assert.assertTrue(result.contains(new File(root, "b/c/4.txt").getAbsolutePath()));
+
+        scanner.interruptParsing();
+        while (scanner.hasNext())
+        {
+            scanner.next();
+        }
+    }
+}
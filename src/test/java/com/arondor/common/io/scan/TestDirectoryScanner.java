@@ -1,8 +1,12 @@
 package com.arondor.common.io.scan;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.junit.Before;
@@ -177,4 +181,398 @@ public class TestDirectoryScanner
         Assert.assertEquals("test3/a/b/2.txt", result.get(1));
         Assert.assertEquals("test3/a/b/3", result.get(2));
     }
+
+    @Test
+    public void testDirScan_test1_batches()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+        List<String> batch;
+        while (!(batch = scanner.nextBatch(2)).isEmpty())
+        {
+            Assert.assertTrue(batch.size() <= 2);
+            result.addAll(batch);
+        }
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals(5, scanner.getTotalObjectsIterated());
+    }
+
+    @Test
+    public void testDirScan_test1_nio()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+        Assert.assertEquals("test1/a/b/c/c1.txt", result.get(1));
+        Assert.assertEquals("test1/a/b/c/d/e.txt", result.get(2));
+        Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(3));
+        Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+    }
+
+    @Test
+    public void testDirScan_test3_filterExtensions_nio_sorted()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.setSortFolderChildren(true);
+        List<String> excludedExtensions = new ArrayList<String>();
+        excludedExtensions.add("pcl");
+        scanner.setExcludedExtensions(excludedExtensions);
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test3/*/*/*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("test3/a/b/2.1.txt", result.get(0));
+        Assert.assertEquals("test3/a/b/2.txt", result.get(1));
+        Assert.assertEquals("test3/a/b/3", result.get(2));
+    }
+
+    @Test
+    public void testDirScan_test3_filterExtensions_stream_sorted()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.STREAM);
+        scanner.setSortFolderChildren(true);
+        List<String> excludedExtensions = new ArrayList<String>();
+        excludedExtensions.add("pcl");
+        scanner.setExcludedExtensions(excludedExtensions);
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test3/*/*/*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("test3/a/b/2.1.txt", result.get(0));
+        Assert.assertEquals("test3/a/b/2.txt", result.get(1));
+        Assert.assertEquals("test3/a/b/3", result.get(2));
+    }
+
+    @Test
+    public void testDirScan_test2_b_workStealing()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setWorkStealing(true);
+        scanner.setCorePoolSize(4);
+        scanner.setAsync(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test2/**/b/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals("test2/a/b/c/c1.txt", result.get(0));
+        Assert.assertEquals("test2/a/b/c/d.0/e.txt", result.get(1));
+        Assert.assertEquals("test2/a/b/e/f/g.txt", result.get(2));
+        Assert.assertEquals("test2/a/b/e/f1.txt", result.get(3));
+    }
+
+    @Test
+    public void testFileEntryScan_test3()
+    {
+        FileEntryScanner scanner = new FileEntryScanner();
+        scanner.setSortFolderChildren(true);
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test3/**/*.pcl");
+        scanner.setFilters(filters);
+
+        List<FileEntry> result = scanner.getIncludedEntries();
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals("test3/a/b/1.1.pcl", substringAfter(result.get(0).getPath(), "/resources/"));
+        Assert.assertEquals("test3/a/b/1.pcl", substringAfter(result.get(1).getPath(), "/resources/"));
+        for (FileEntry entry : result)
+        {
+            File file = new File(entry.getPath());
+            Assert.assertEquals(file.length(), entry.getSize());
+            Assert.assertEquals(file.lastModified(), entry.getLastModified());
+        }
+    }
+
+    @Test
+    public void testDirScan_test1_excludedPaths()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        List<String> excludedPaths = new ArrayList<String>();
+        excludedPaths.add("**/c/**");
+        excludedPaths.add("**/f1*");
+        scanner.setExcludedPaths(excludedPaths);
+        List<String> excludedExtensions = new ArrayList<String>();
+        excludedExtensions.add("PCL");
+        scanner.setExcludedExtensions(excludedExtensions);
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        filters.add("./src/test/resources/test3/**/*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+        Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(1));
+        Assert.assertEquals("test3/a/b/2.1.txt", result.get(2));
+        Assert.assertEquals("test3/a/b/2.txt", result.get(3));
+        Assert.assertEquals("test3/a/b/3", result.get(4));
+    }
+
+    @Test
+    public void testDirScan_test1_mergedFilters()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.txt");
+        filters.add("./src/test/resources/test1/a/b/c/**/*.*");
+        filters.add("./src/test/resources/test1/a/*/e/*1.txt");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+        Assert.assertEquals("test1/a/b/c/c1.txt", result.get(1));
+        Assert.assertEquals("test1/a/b/c/d/e.txt", result.get(2));
+        Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(3));
+        Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+    }
+
+    @Test
+    public void testDirScan_test1_ordered()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setOrderedOutput(true);
+        scanner.setOrderedPrefetchLimit(2);
+        scanner.setCorePoolSize(4);
+        scanner.setAsync(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+        Assert.assertEquals("test1/a/b/c/c1.txt", result.get(1));
+        Assert.assertEquals("test1/a/b/c/d/e.txt", result.get(2));
+        Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(3));
+        Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+    }
+
+    @Test
+    public void testDirScan_test2_b_fileStoreConcurrency()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        Map<String, Integer> fileStoreConcurrency = new HashMap<String, Integer>();
+        fileStoreConcurrency.put("./src/test/resources", 2);
+        scanner.setFileStoreConcurrency(fileStoreConcurrency);
+        scanner.setCorePoolSize(4);
+        scanner.setAsync(true);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test2/**/b/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals("test2/a/b/c/c1.txt", result.get(0));
+        Assert.assertEquals("test2/a/b/c/d.0/e.txt", result.get(1));
+        Assert.assertEquals("test2/a/b/e/f/g.txt", result.get(2));
+        Assert.assertEquals("test2/a/b/e/f1.txt", result.get(3));
+
+        Map<String, Integer> peaks = scanner.getFileStorePeakConcurrency();
+        LOGGER.info("Peak concurrency " + peaks);
+        Assert.assertEquals(1, peaks.size());
+        for (int peak : peaks.values())
+        {
+            Assert.assertTrue("Peak concurrency " + peak, peak >= 1 && peak <= 2);
+        }
+    }
+
+    @Test
+    public void testDirScan_test1_metrics()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+
+        for (String file : scanner)
+        {
+            result.add(file);
+        }
+        ScanMetrics metrics = scanner.getScanMetrics();
+        LOGGER.info("Metrics " + metrics);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals(7, metrics.getFoldersListed());
+        Assert.assertEquals(11, metrics.getEntriesListed());
+        Assert.assertEquals(5, metrics.getFilesMatched());
+        Assert.assertEquals(6, metrics.getForkedTasks() + metrics.getInlinedTasks());
+        Assert.assertTrue(metrics.getListingLatencyMillis(50) <= metrics.getListingLatencyMillis(99));
+        Assert.assertTrue(metrics.getListingLatencyMillis(99) <= metrics.getMaxListingLatencyMillis());
+        Assert.assertEquals(7, metrics.getSlowestFolders().length);
+    }
+
+    @Test
+    public void testDirScan_test1_partitioned()
+    {
+        for (int partitionDepth = 1; partitionDepth <= 3; partitionDepth += 2)
+        {
+            List<String> result = new ArrayList<String>();
+            for (int partitionIndex = 0; partitionIndex < 3; partitionIndex++)
+            {
+                DirectoryScanner scanner = new DirectoryScanner();
+                scanner.setPartition(partitionIndex, 3);
+                scanner.setPartitionDepth(partitionDepth);
+                scanner.setAsync(false);
+                List<String> filters = new ArrayList<String>();
+                filters.add("./src/test/resources/test1/**/*.*");
+                scanner.setFilters(filters);
+
+                for (String file : scanner)
+                {
+                    result.add(substringAfter(file, "/resources/"));
+                }
+            }
+            Collections.sort(result);
+            LOGGER.info("Result " + result);
+            Assert.assertEquals(5, result.size());
+            Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+            Assert.assertEquals("test1/a/b/c/c1.txt", result.get(1));
+            Assert.assertEquals("test1/a/b/c/d/e.txt", result.get(2));
+            Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(3));
+            Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+        }
+    }
+
+    @Test
+    public void testDirScan_test1_parallelStream()
+    {
+        for (int pass = 0; pass < 2; pass++)
+        {
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setAsync(true);
+            scanner.setOrderedOutput(pass == 1);
+            List<String> filters = new ArrayList<String>();
+            filters.add("./src/test/resources/test1/**/*.*");
+            scanner.setFilters(filters);
+
+            FileScanner fileScanner = scanner;
+            List<String> result = new ArrayList<String>();
+            for (String file : fileScanner.parallelStream().collect(Collectors.toList()))
+            {
+                result.add(substringAfter(file, "/resources/"));
+            }
+            if (pass == 0)
+            {
+                Collections.sort(result);
+            }
+            LOGGER.info("Result " + result);
+            Assert.assertEquals(5, result.size());
+            Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+            Assert.assertEquals("test1/a/b/c/c1.txt", result.get(1));
+            Assert.assertEquals("test1/a/b/c/d/e.txt", result.get(2));
+            Assert.assertEquals("test1/a/b/e/f/g.txt", result.get(3));
+            Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+        }
+    }
+
+    @Test
+    public void testDirScan_test1_emittedOnce()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.txt");
+        /*
+         * Enough globs to split the root over several automata
+         */
+        for (int idx = 0; idx < 40; idx++)
+        {
+            filters.add("./src/test/resources/test1/**/folder" + idx + "/*.doc");
+        }
+        filters.add("./src/test/resources/test1/**/*.*");
+        filters.add("./src/test/resources/test1/a/b/b1.txt");
+        scanner.setFilters(filters);
+        Assert.assertTrue(new ScanPlanner(filters).getRoots().get(0).compile().size() > 1);
+
+        List<String> result = new ArrayList<String>();
+        for (String file : scanner)
+        {
+            result.add(substringAfter(file, "/resources/"));
+        }
+        Collections.sort(result);
+        LOGGER.info("Result " + result);
+        Assert.assertEquals(5, result.size());
+        Assert.assertEquals("test1/a/b/b1.txt", result.get(0));
+        Assert.assertEquals("test1/a/b/e/f1.txt", result.get(4));
+    }
 }
@@ -0,0 +1,103 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestFileAttributeFilters
+{
+    private static final long HOUR = 3600000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    private long now;
+
+    private void createFile(String path, int size, long lastModified) throws IOException
+    {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[size]);
+        output.close();
+        file.setLastModified(lastModified);
+    }
+
+    private void createTree() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        now = System.currentTimeMillis();
+        createFile("old/a.txt", 10, now - 48 * HOUR);
+        createFile("old/b.txt", 1000, now - 48 * HOUR);
+        createFile("new/c.txt", 10, now - 10000);
+        createFile("new/d.txt", 1000, now - 10000);
+        new File(root, "old").setLastModified(now - 48 * HOUR);
+    }
+
+    private Set<String> scan(DirectoryScanner scanner)
+    {
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        Set<String> result = new TreeSet<String>();
+        for (String file : scanner)
+        {
+            result.add(file.substring(root.getAbsolutePath().length() + 1).replace('\\', '/'));
+        }
+        return result;
+    }
+
+    @Test
+    public void testSizeAndAge() throws IOException
+    {
+        createTree();
+        for (TraversalEngine traversalEngine : TraversalEngine.values())
+        {
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setTraversalEngine(traversalEngine);
+            scanner.addFileAttributeFilter(FileAttributeFilters.minSize(100));
+            Assert.assertEquals("[new/d.txt, old/b.txt]", scan(scanner).toString());
+
+            scanner = new DirectoryScanner();
+            scanner.setTraversalEngine(traversalEngine);
+            scanner.addFileAttributeFilter(FileAttributeFilters.or(FileAttributeFilters.maxAge(HOUR),
+                    FileAttributeFilters.maxSize(100)));
+            Assert.assertEquals("[new/c.txt, new/d.txt, old/a.txt]", scan(scanner).toString());
+        }
+    }
+
+    @Test
+    public void testFolderPruning() throws IOException
+    {
+        createTree();
+        createFile("old/e.txt", 10, now);
+        new File(root, "old").setLastModified(now - 48 * HOUR);
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.addFileAttributeFilter(FileAttributeFilters.modifiedSince(now - HOUR));
+        Assert.assertEquals("[new/c.txt, new/d.txt, old/e.txt]", scan(scanner).toString());
+
+        /*
+         * The old folder is not walked, missing the file modified in place
+         */
+        scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.addFileAttributeFilter(FileAttributeFilters.modifiedSince(now - HOUR));
+        scanner.setFoldersModifiedSince(now - HOUR);
+        Assert.assertEquals("[new/c.txt, new/d.txt]", scan(scanner).toString());
+        Assert.assertEquals(2, scanner.getScanMetrics().getFoldersListed());
+    }
+}
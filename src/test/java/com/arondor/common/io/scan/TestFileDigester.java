@@ -0,0 +1,192 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestFileDigester
+{
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    private void createFile(String path, String content) throws IOException
+    {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(content.getBytes("UTF-8"));
+        output.close();
+    }
+
+    private FileDigester createDigester()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        FileDigester digester = new FileDigester(scanner);
+        digester.setThreads(4);
+        digester.setReadBufferSize(4096);
+        digester.setInFlightBytes(100000);
+        return digester;
+    }
+
+    private Map<String, FileDigest> digest(FileDigester digester)
+    {
+        Map<String, FileDigest> digests = new TreeMap<String, FileDigest>();
+        for (FileDigest digest : digester)
+        {
+            digests.put(digest.getPath().substring(root.getAbsolutePath().length() + 1).replace('\\', '/'), digest);
+        }
+        return digests;
+    }
+
+    @Test(timeout = 30000)
+    public void testDigest() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        createFile("a/abc.txt", "abc");
+        StringBuilder large = new StringBuilder();
+        for (int idx = 0; idx < 50000; idx++)
+        {
+            large.append(idx);
+        }
+        for (int idx = 0; idx < 20; idx++)
+        {
+            createFile("b/large" + idx + ".txt", large.toString());
+        }
+
+        FileDigester digester = createDigester();
+        digester.setAsync(true);
+        Map<String, FileDigest> digests = digest(digester);
+        Assert.assertEquals(21, digests.size());
+        Assert.assertEquals(ABC_SHA256, digests.get("a/abc.txt").getHexDigest());
+        Assert.assertEquals(digests.get("b/large0.txt").getHexDigest(), digests.get("b/large19.txt").getHexDigest());
+        Assert.assertEquals(3 + 20 * large.length(), digester.getBytesRead());
+
+        digester = createDigester();
+        digester.setAlgorithm(FileDigester.CRC32);
+        Assert.assertEquals("352441c2", digest(digester).get("a/abc.txt").getHexDigest());
+    }
+
+    @Test(timeout = 30000)
+    public void testCache() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        createFile("a.txt", "a");
+        createFile("abc.txt", "ab");
+        File cacheFile = new File(temporaryFolder.getRoot(), "digests.cache");
+
+        FileDigester digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        Map<String, FileDigest> digests = digest(digester);
+        Assert.assertEquals(2, digests.size());
+        Assert.assertEquals(0, digester.getCachedFiles());
+        Assert.assertTrue(cacheFile.exists());
+
+        createFile("abc.txt", "abc");
+        digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        digests = digest(digester);
+        Assert.assertEquals(1, digester.getCachedFiles());
+        Assert.assertTrue(digests.get("a.txt").isCached());
+        Assert.assertFalse(digests.get("abc.txt").isCached());
+        Assert.assertEquals(ABC_SHA256, digests.get("abc.txt").getHexDigest());
+    }
+
+    @Test(timeout = 30000)
+    public void testCorruptCache() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        createFile("a.txt", "a");
+        createFile("abc.txt", "abc");
+        File cacheFile = new File(temporaryFolder.getRoot(), "digests.cache");
+
+        FileDigester digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        Assert.assertEquals(2, digest(digester).size());
+
+        /*
+         * Truncated : the last entry ends early
+         */
+        byte[] content = Files.readAllBytes(cacheFile.toPath());
+        Files.write(cacheFile.toPath(), Arrays.copyOf(content, content.length - 3));
+        digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        Map<String, FileDigest> digests = digest(digester);
+        Assert.assertEquals(2, digests.size());
+        Assert.assertEquals(0, digester.getCachedFiles());
+        Assert.assertEquals(ABC_SHA256, digests.get("abc.txt").getHexDigest());
+
+        /*
+         * Rewritten by the previous run
+         */
+        digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        Assert.assertEquals(2, digest(digester).size());
+        Assert.assertEquals(2, digester.getCachedFiles());
+
+        /*
+         * Bad magic
+         */
+        createFile("../digests.cache", "not a digest cache");
+        digester = createDigester();
+        digester.setCacheFile(cacheFile);
+        Assert.assertEquals(2, digest(digester).size());
+        Assert.assertEquals(0, digester.getCachedFiles());
+    }
+
+    @Test(timeout = 30000)
+    public void testInterruptSource() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        for (int idx = 0; idx < 200; idx++)
+        {
+            createFile("f" + idx + ".txt", "content " + idx);
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(true);
+        scanner.setQueueLimit(1);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        FileDigester digester = new FileDigester(scanner);
+        digester.setAsync(true);
+        digester.setQueueLimit(1);
+
+        Assert.assertTrue(digester.hasNext());
+        Assert.assertNotNull(digester.next());
+        digester.interruptParsing();
+        Assert.assertTrue(scanner.isInterrupted());
+        int count = 1;
+        while (digester.hasNext())
+        {
+            digester.next();
+            count++;
+        }
+        Assert.assertTrue(count < 200);
+        /*
+         * The scan ends instead of waiting for room in its queue
+         */
+        while (scanner.hasNext())
+        {
+            scanner.next();
+        }
+    }
+}
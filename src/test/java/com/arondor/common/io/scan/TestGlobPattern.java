@@ -0,0 +1,94 @@
+package com.arondor.common.io.scan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.Assert;
+
+public class TestGlobPattern
+{
+    private static long walk(GlobPattern glob, String path)
+    {
+        long state = glob.getInitialState();
+        for (String name : path.split("/"))
+        {
+            state = glob.step(state, name);
+        }
+        return state;
+    }
+
+    @Test
+    public void testFastPaths()
+    {
+        GlobPattern glob = GlobPattern.compile("*/b*/*.PDF".split("/"), 0);
+        Assert.assertTrue(glob.matches(walk(glob, "a/b1/x.pdf")));
+        Assert.assertTrue(glob.matches(walk(glob, "a/B/x.Pdf")));
+        Assert.assertFalse(glob.matches(walk(glob, "a/c/x.pdf")));
+        Assert.assertFalse(glob.matches(walk(glob, "a/b/x.pdfa")));
+    }
+
+    @Test
+    public void testWildcard()
+    {
+        Assert.assertTrue(GlobPattern.wildcardMatches("*.*", "a.b", false));
+        Assert.assertFalse(GlobPattern.wildcardMatches("*.*", "ab", false));
+        Assert.assertTrue(GlobPattern.wildcardMatches("a?c*d", "abcxxd", false));
+        Assert.assertTrue(GlobPattern.wildcardMatches("*a*a*", "banana", false));
+        Assert.assertFalse(GlobPattern.wildcardMatches("*a*a*", "bnn", false));
+        Assert.assertTrue(GlobPattern.wildcardMatches("A?C", "abc", true));
+        Assert.assertFalse(GlobPattern.wildcardMatches("A?C", "abc", false));
+    }
+
+    @Test
+    public void testPruning()
+    {
+        GlobPattern glob = GlobPattern.compile("2024/**/*.pdf".split("/"), 0);
+        Assert.assertEquals(GlobPattern.DEAD_STATE, walk(glob, "2023"));
+        Assert.assertTrue(glob.canDescend(walk(glob, "2024/a/b")));
+        Assert.assertTrue(glob.matches(walk(glob, "2024/x.pdf")));
+        Assert.assertTrue(glob.matches(walk(glob, "2024/a/b/x.pdf")));
+
+        glob = GlobPattern.compile("**/2024/*.pdf".split("/"), 0);
+        Assert.assertTrue(glob.matches(walk(glob, "a/b/2024/x.pdf")));
+        Assert.assertFalse(glob.matches(walk(glob, "a/2024/b/x.pdf")));
+
+        glob = GlobPattern.compile("**/b/**/*.txt".split("/"), 0);
+        Assert.assertFalse(glob.matches(walk(glob, "b/x.txt")));
+        Assert.assertTrue(glob.matches(walk(glob, "b/c/x.txt")));
+        Assert.assertTrue(glob.matches(walk(glob, "a/b/c/d/x.txt")));
+
+        glob = GlobPattern.compile("a/*.txt".split("/"), 0);
+        long state = walk(glob, "a/b.txt");
+        Assert.assertTrue(glob.matches(state));
+        Assert.assertFalse(glob.canDescend(state));
+    }
+
+    @Test
+    public void testExclusions()
+    {
+        List<String> patterns = new ArrayList<String>();
+        patterns.add("**/.snapshot/**");
+        patterns.add("**/node_modules");
+        GlobPattern glob = GlobPattern.compilePaths(patterns);
+        long state = walk(glob, "data/share/.snapshot");
+        Assert.assertFalse(glob.matches(state));
+        Assert.assertTrue(glob.matchesAllDescendants(state));
+        Assert.assertTrue(glob.matches(walk(glob, "data/node_modules")));
+        Assert.assertFalse(glob.matches(walk(glob, "data/node_modules2")));
+        Assert.assertFalse(glob.matchesAllDescendants(walk(glob, "data/share")));
+    }
+
+    @Test
+    public void testExtensionSet()
+    {
+        ExtensionSet extensions = new ExtensionSet(Arrays.asList("pcl", "TIF", ""));
+        Assert.assertTrue(extensions.containsExtensionOf("a.PCL"));
+        Assert.assertTrue(extensions.containsExtensionOf("a.b.tif"));
+        Assert.assertTrue(extensions.containsExtensionOf("noextension"));
+        Assert.assertFalse(extensions.containsExtensionOf("a.pdf"));
+        Assert.assertFalse(extensions.containsExtensionOf("a.tiff"));
+    }
+}
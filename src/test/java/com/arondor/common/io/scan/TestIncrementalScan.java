@@ -0,0 +1,214 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestIncrementalScan
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File root;
+
+    private File snapshotFile;
+
+    private final Map<String, ScanChange> changes = new TreeMap<String, ScanChange>();
+
+    private static void write(File file, String content) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileOutputStream output = new FileOutputStream(file);
+        try
+        {
+            output.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    @Before
+    public void init() throws IOException
+    {
+        root = temporaryFolder.newFolder("root");
+        snapshotFile = new File(temporaryFolder.getRoot(), "scan.snapshot");
+        write(new File(root, "a/1.txt"), "1");
+        write(new File(root, "a/2.txt"), "2");
+        write(new File(root, "b/c/3.txt"), "3");
+        write(new File(root, "b/c/4.pdf"), "4");
+    }
+
+    private List<String> scan(boolean emitUnchangedFiles, boolean verifyUnchangedFolders)
+    {
+        changes.clear();
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.setAsync(false);
+        scanner.setSnapshotFile(snapshotFile);
+        scanner.setEmitUnchangedFiles(emitUnchangedFiles);
+        scanner.setVerifyUnchangedFolders(verifyUnchangedFolders);
+        scanner.setScanChangeListener(new ScanChangeListener()
+        {
+            @Override
+            public void fileChanged(String path, ScanChange change)
+            {
+                synchronized (changes)
+                {
+                    changes.put(path.substring(root.getAbsolutePath().length() + 1), change);
+                }
+            }
+        });
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+
+        List<String> result = new ArrayList<String>();
+        for (String file : scanner)
+        {
+            result.add(file.substring(root.getAbsolutePath().length() + 1));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testIncrementalScan() throws IOException
+    {
+        Assert.assertEquals("[a/1.txt, a/2.txt, b/c/3.txt]", scan(false, false).toString());
+        Assert.assertEquals(3, changes.size());
+        Assert.assertTrue(snapshotFile.exists());
+
+        Assert.assertEquals("[]", scan(false, false).toString());
+        Assert.assertTrue(changes.isEmpty());
+        Assert.assertEquals("[a/1.txt, a/2.txt, b/c/3.txt]", scan(true, false).toString());
+
+        File folderA = new File(root, "a");
+        File folderC = new File(root, "b/c");
+        long lastModifiedA = folderA.lastModified();
+        long lastModifiedC = folderC.lastModified();
+        write(new File(root, "a/5.txt"), "5");
+        Assert.assertTrue(new File(root, "b/c/3.txt").delete());
+        folderA.setLastModified(lastModifiedA + 10000);
+        folderC.setLastModified(lastModifiedC + 10000);
+
+        Assert.assertEquals("[a/5.txt]", scan(false, false).toString());
+        Assert.assertEquals("{a/5.txt=ADDED, b/c/3.txt=REMOVED}", changes.toString());
+
+        File file1 = new File(root, "a/1.txt");
+        write(file1, "modified");
+        folderA.setLastModified(lastModifiedA + 10000);
+        Assert.assertEquals("[]", scan(false, false).toString());
+        Assert.assertEquals("[a/1.txt]", scan(false, true).toString());
+        Assert.assertEquals("{a/1.txt=MODIFIED}", changes.toString());
+        Assert.assertEquals("[]", scan(false, false).toString());
+    }
+
+    @Test(timeout = 30000)
+    public void testInterruptedScanKeepsSnapshot() throws IOException
+    {
+        scan(false, false);
+        byte[] committed = Files.readAllBytes(snapshotFile.toPath());
+
+        for (int idx = 0; idx < 20; idx++)
+        {
+            write(new File(root, "n" + idx + "/new.txt"), "new");
+        }
+        File folderC = new File(root, "b/c");
+        long lastModifiedC = folderC.lastModified();
+        Assert.assertTrue(new File(root, "b/c/3.txt").delete());
+        folderC.setLastModified(lastModifiedC + 10000);
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setTraversalEngine(TraversalEngine.NIO);
+        scanner.setAsync(true);
+        scanner.setQueueLimit(1);
+        scanner.setSnapshotFile(snapshotFile);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        Assert.assertTrue(scanner.hasNext());
+        scanner.next();
+        scanner.interruptParsing();
+        while (scanner.hasNext())
+        {
+            scanner.next();
+        }
+        Assert.assertTrue(Arrays.equals(committed, Files.readAllBytes(snapshotFile.toPath())));
+
+        /*
+         * Every change is still reported against the previous snapshot
+         */
+        Assert.assertEquals(20, scan(false, false).size());
+        Assert.assertEquals(21, changes.size());
+        Assert.assertEquals(ScanChange.REMOVED, changes.get("b/c/3.txt"));
+    }
+
+    private static String describe(ScanSnapshot snapshot, File folder)
+    {
+        ScanSnapshot.Folder record = snapshot.findFolder(folder.getAbsolutePath());
+        List<String> children = new ArrayList<String>();
+        for (ScanEntry child : record.readChildren(folder))
+        {
+            children.add(child.getName() + (child.isDirectory() ? "/" : "=" + child.getSize()));
+        }
+        Collections.sort(children);
+        return record.getLastModified() + " " + children + " " + record.getRecord().remaining();
+    }
+
+    @Test
+    public void testSnapshotSegments() throws IOException
+    {
+        scan(false, false);
+        File[] folders = { root, new File(root, "a"), new File(root, "b"), new File(root, "b/c") };
+        List<String> expected = new ArrayList<String>();
+        ScanSnapshot snapshot = ScanSnapshot.open(snapshotFile);
+        try
+        {
+            for (File folder : folders)
+            {
+                expected.add(describe(snapshot, folder));
+            }
+        }
+        finally
+        {
+            snapshot.close();
+        }
+        Assert.assertTrue(expected.get(3).contains("3.txt=1"));
+
+        /*
+         * Segments of 16 bytes : most numbers and names span two segments
+         */
+        snapshot = ScanSnapshot.open(snapshotFile, 4);
+        for (int idx = 0; idx < folders.length; idx++)
+        {
+            Assert.assertEquals(expected.get(idx), describe(snapshot, folders[idx]));
+        }
+        Assert.assertNull(snapshot.findFolder(new File(root, "missing").getAbsolutePath()));
+        snapshot.close();
+        try
+        {
+            snapshot.findFolder(root.getAbsolutePath());
+            Assert.fail();
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+}
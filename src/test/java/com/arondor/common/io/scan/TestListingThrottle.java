@@ -0,0 +1,130 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestListingThrottle
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private void list(ListingThrottle throttle, long latencyMillis) throws InterruptedException
+    {
+        Assert.assertTrue(throttle.acquire());
+        Thread.sleep(latencyMillis);
+        throttle.release(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+
+    @Test(timeout = 30000)
+    public void testDecreaseAndRecover() throws InterruptedException
+    {
+        ListingThrottle throttle = new ListingThrottle(5, 8);
+        Assert.assertEquals(8, throttle.getConcurrency());
+
+        for (int idx = 0; idx < 8; idx++)
+        {
+            list(throttle, 20);
+        }
+        Assert.assertEquals(1, throttle.getConcurrency());
+        Assert.assertTrue(throttle.getDelayMillis() > 0);
+
+        int listings = 0;
+        while (throttle.getConcurrency() < 8)
+        {
+            list(throttle, 0);
+            listings++;
+        }
+        Assert.assertEquals(0d, throttle.getDelayMillis());
+        /*
+         * Additive increase : about one step per window of listings
+         */
+        Assert.assertTrue(listings > 28);
+    }
+
+    @Test(timeout = 30000)
+    public void testInterruptedAcquire()
+    {
+        ListingThrottle throttle = new ListingThrottle(5, 1);
+        Assert.assertTrue(throttle.acquire());
+
+        Thread.currentThread().interrupt();
+        Assert.assertFalse(throttle.acquire());
+        Assert.assertTrue(Thread.interrupted());
+
+        /*
+         * The interrupted call took no slot : the only one is free again
+         */
+        throttle.release(0);
+        Assert.assertTrue(throttle.acquire());
+        throttle.release(0);
+    }
+
+    @Test(timeout = 30000)
+    public void testThrottledScan() throws IOException
+    {
+        File root = temporaryFolder.newFolder("root");
+        for (int folder = 0; folder < 10; folder++)
+        {
+            File sub = new File(root, "d" + folder + "/e");
+            sub.mkdirs();
+            new File(sub, "a.txt").createNewFile();
+            new File(sub.getParentFile(), "b.txt").createNewFile();
+        }
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(true);
+        scanner.setTargetListingLatency(1);
+        scanner.setMaxListingConcurrency(2);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        int count = 0;
+        for (@SuppressWarnings("unused")
+        String file : scanner)
+        {
+            count++;
+        }
+        Assert.assertEquals(20, count);
+        Assert.assertNotNull(scanner.getListingThrottle());
+    }
+
+    @Test(timeout = 30000)
+    public void testThrottledEntryScan() throws IOException
+    {
+        File root = temporaryFolder.newFolder("root");
+        for (int folder = 0; folder < 10; folder++)
+        {
+            File sub = new File(root, "d" + folder);
+            sub.mkdirs();
+            FileOutputStream output = new FileOutputStream(new File(sub, "a.txt"));
+            output.write(new byte[folder]);
+            output.close();
+            new File(sub, "b.pdf").createNewFile();
+        }
+        FileEntryScanner scanner = new FileEntryScanner();
+        scanner.setAsync(false);
+        scanner.setTargetListingLatency(1);
+        scanner.setMaxListingConcurrency(1);
+        List<String> filters = new ArrayList<String>();
+        filters.add(root.getAbsolutePath() + "/**/*.txt");
+        scanner.setFilters(filters);
+        long size = 0;
+        int count = 0;
+        for (FileEntry entry : scanner)
+        {
+            size += entry.getSize();
+            count++;
+        }
+        Assert.assertEquals(10, count);
+        Assert.assertEquals(45, size);
+    }
+}
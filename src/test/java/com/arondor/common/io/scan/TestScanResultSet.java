@@ -0,0 +1,203 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestScanResultSet
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> createPaths(int count)
+    {
+        Random random = new Random(1);
+        List<String> paths = new ArrayList<String>();
+        for (int idx = 0; idx < count; idx++)
+        {
+            paths.add("/data/archive/" + random.nextInt(20) + "/folder" + random.nextInt(100) + "/file-" + idx
+                    + (idx % 7 == 0 ? "-\u00e9t\u00e9" : "") + ".txt");
+        }
+        return paths;
+    }
+
+    @Test
+    public void testSpilledSet()
+    {
+        File spillFolder = temporaryFolder.getRoot();
+        List<String> paths = createPaths(20000);
+        ScanResultSet set = new ScanResultSet(4096, spillFolder, 100);
+        for (String path : paths)
+        {
+            set.add(path);
+        }
+        Assert.assertEquals(20000, set.size());
+        Assert.assertTrue(set.getDiskRunCount() > 0);
+        Assert.assertTrue(set.getDiskRunCount() < 16);
+
+        List<String> sorted = new ArrayList<String>(paths);
+        Collections.sort(sorted);
+        Iterator<String> iterator = set.sortedIterator();
+        for (String path : sorted)
+        {
+            Assert.assertEquals(path, iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        int count = 0;
+        for (@SuppressWarnings("unused")
+        String path : set)
+        {
+            count++;
+        }
+        Assert.assertEquals(20000, count);
+
+        for (int idx = 0; idx < paths.size(); idx += 37)
+        {
+            Assert.assertTrue(set.contains(paths.get(idx)));
+            Assert.assertFalse(set.contains(paths.get(idx) + ".pdf"));
+        }
+        Assert.assertFalse(set.contains(""));
+        Assert.assertFalse(set.contains("/zzz"));
+
+        set.close();
+        Assert.assertEquals(0, spillFolder.list().length);
+    }
+
+    @Test
+    public void testDuplicates()
+    {
+        File spillFolder = temporaryFolder.getRoot();
+        List<String> paths = createPaths(2000);
+        ScanResultSet set = new ScanResultSet(4096, spillFolder, 100);
+        for (String path : paths)
+        {
+            set.add(path);
+        }
+        Assert.assertEquals(2000, set.size());
+        for (int idx = 0; idx < paths.size(); idx += 3)
+        {
+            set.add(paths.get(idx));
+        }
+        set.add(paths.get(0));
+        Assert.assertEquals(2000, set.size());
+        int count = 0;
+        Iterator<String> iterator = set.sortedIterator();
+        while (iterator.hasNext())
+        {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(2000, count);
+        set.close();
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(0, set.size());
+
+        ScanResultSet small = new ScanResultSet();
+        small.add("/b");
+        small.add("/a");
+        small.add("/b");
+        Assert.assertEquals(2, small.size());
+        small.close();
+    }
+
+    @Test
+    public void testAbandonedIterators()
+    {
+        File spillFolder = temporaryFolder.getRoot();
+        ScanResultSet set = new ScanResultSet(4096, spillFolder, 100);
+        for (String path : createPaths(5000))
+        {
+            set.add(path);
+        }
+        Assert.assertTrue(set.getDiskRunCount() > 0);
+        ScanResultSet.PathIterator sorted = set.sortedIterator();
+        Assert.assertNotNull(sorted.next());
+        sorted.close();
+        Assert.assertFalse(sorted.hasNext());
+
+        ScanResultSet.PathIterator runs = set.iterator();
+        Assert.assertNotNull(runs.next());
+        ScanResultSet.PathIterator other = set.sortedIterator();
+        Assert.assertNotNull(other.next());
+        set.close();
+        Assert.assertFalse(runs.hasNext());
+        Assert.assertFalse(other.hasNext());
+        Assert.assertEquals(0, spillFolder.list().length);
+    }
+
+    @Test
+    public void testMergeWhileIterating()
+    {
+        File spillFolder = temporaryFolder.getRoot();
+        ScanResultSet set = new ScanResultSet(1, spillFolder, 100);
+        List<String> paths = createPaths(500);
+        for (String path : paths)
+        {
+            set.add(path);
+        }
+        Assert.assertEquals(5, set.getDiskRunCount());
+        ScanResultSet.PathIterator runs = set.iterator();
+        Assert.assertNotNull(runs.next());
+        ScanResultSet.PathIterator sorted = set.sortedIterator();
+        ScanResultSet.PathIterator abandoned = set.iterator();
+
+        /*
+         * Reaching 16 disk runs merges them, while iterators read them
+         */
+        for (int idx = 0; idx < 1100; idx++)
+        {
+            set.add("/later/" + idx);
+        }
+        Assert.assertTrue(set.getDiskRunCount() < 16);
+
+        int count = 1;
+        while (runs.hasNext())
+        {
+            Assert.assertFalse(runs.next().startsWith("/later/"));
+            count++;
+        }
+        Assert.assertEquals(500, count);
+        List<String> sortedPaths = new ArrayList<String>();
+        while (sorted.hasNext())
+        {
+            sortedPaths.add(sorted.next());
+        }
+        Collections.sort(paths);
+        Assert.assertEquals(paths, sortedPaths);
+
+        /*
+         * Only the runs of the set are left once the iterators are done
+         */
+        abandoned.close();
+        Assert.assertEquals(set.getDiskRunCount(), spillFolder.list().length);
+        Assert.assertEquals(1600, set.size());
+        set.close();
+        Assert.assertEquals(0, spillFolder.list().length);
+    }
+
+    @Test
+    public void testIncludedFileSet()
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setAsync(false);
+        List<String> filters = new ArrayList<String>();
+        filters.add("./src/test/resources/test1/**/*.*");
+        scanner.setFilters(filters);
+
+        ScanResultSet set = scanner.getIncludedFileSet(1024, temporaryFolder.getRoot());
+        Assert.assertEquals(5, set.size());
+        Assert.assertTrue(set.contains(new File("./src/test/resources/test1/a/b/c/d/e.txt").getAbsolutePath()));
+        Assert.assertTrue(set.sortedIterator().next().endsWith("b1.txt"));
+        set.close();
+    }
+}
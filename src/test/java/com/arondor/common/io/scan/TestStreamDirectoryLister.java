@@ -0,0 +1,89 @@
+package com.arondor.common.io.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.Assert;
+
+public class TestStreamDirectoryLister
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> list(File folder, boolean sorted, int runSize)
+    {
+        final List<String> names = new ArrayList<String>();
+        new StreamDirectoryLister(runSize, temporaryFolder.getRoot()).listChildren(folder, sorted,
+                new DirectoryLister.EntryVisitor()
+                {
+                    @Override
+                    public void visit(ScanEntry entry)
+                    {
+                        names.add(entry.getName());
+                    }
+                });
+        return names;
+    }
+
+    @Test
+    public void testExternalSort() throws IOException
+    {
+        File folder = temporaryFolder.newFolder("large");
+        for (int idx = 999; idx >= 0; idx--)
+        {
+            new File(folder, "f" + idx).createNewFile();
+        }
+        List<String> unsorted = list(folder, false, 16);
+        Assert.assertEquals(1000, unsorted.size());
+
+        List<String> inHeap = list(folder, true, 2000);
+        List<String> external = list(folder, true, 16);
+        Assert.assertEquals(1000, external.size());
+        Assert.assertEquals(inHeap, external);
+        for (int idx = 1; idx < external.size(); idx++)
+        {
+            Assert.assertTrue(external.get(idx - 1).compareTo(external.get(idx)) < 0);
+        }
+        Assert.assertEquals(0, list(temporaryFolder.newFolder("empty"), true, 16).size());
+    }
+
+    @Test
+    public void testSortedOrderMatchesAbsolutePathOrder() throws IOException
+    {
+        File folder = temporaryFolder.newFolder("mixed");
+        for (String name : new String[] { "b", "B", "a.b", "a", "a-b", "a_b", "10", "9", "a b", "Z.txt" })
+        {
+            new File(folder, name).createNewFile();
+        }
+        new File(folder, "a.c").mkdir();
+
+        /*
+         * Order of the former DirectoryScanner.doListOrderedFiles()
+         */
+        File files[] = folder.listFiles();
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File o1, File o2)
+            {
+                return o1.getAbsolutePath().compareTo(o2.getAbsolutePath());
+            }
+        });
+        List<String> expected = new ArrayList<String>();
+        for (File file : files)
+        {
+            expected.add(file.getName());
+        }
+
+        Assert.assertEquals(expected, list(folder, true, 2000));
+        Assert.assertEquals(expected, list(folder, true, 2));
+    }
+}